@@ -0,0 +1,52 @@
+package uk.gov.service.notify;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the bearer token sent with every request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationBenchmark {
+
+    private Authentication authentication;
+    private Hs256TokenSigner signer;
+    private BearerTokenCache tokenCache;
+
+    @Setup
+    public void setUp() {
+        authentication = new Authentication();
+        signer = new Hs256TokenSigner(BenchmarkData.SERVICE_ID, BenchmarkData.SECRET);
+        tokenCache = new BearerTokenCache(BenchmarkData.SERVICE_ID, BenchmarkData.SECRET, BearerTokenCache.MAX_REUSE_SECONDS);
+    }
+
+    @Benchmark
+    public String jose4jCreate() {
+        return authentication.create(BenchmarkData.SERVICE_ID, BenchmarkData.SECRET);
+    }
+
+    @Benchmark
+    public String hs256Sign() {
+        return signer.sign();
+    }
+
+    @Benchmark
+    public String cachedToken() {
+        return tokenCache.getToken();
+    }
+}
@@ -0,0 +1,115 @@
+package uk.gov.service.notify;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Builds response bodies shaped like the ones the Notify API returns, sized like the worst cases seen in production.
+ */
+final class BenchmarkData {
+
+    static final String SERVICE_ID = "5bd0be4b-bb05-4dcd-8ae5-3e80e7e0d6a3";
+    static final String SECRET = "b0c9f4a1-2b3c-4d5e-8f70-1a2b3c4d5e6f";
+    static final String API_KEY = "benchmark_key-" + SERVICE_ID + "-" + SECRET;
+
+    private BenchmarkData() {
+    }
+
+    static JSONObject notification(int bodyLength) {
+        UUID templateId = UUID.randomUUID();
+        JSONObject template = new JSONObject()
+                .put("id", templateId.toString())
+                .put("version", 3)
+                .put("uri", "https://api.notifications.service.gov.uk/v2/template/" + templateId + "/version/3");
+        JSONObject costDetails = new JSONObject()
+                .put("billable_sms_fragments", JSONObject.NULL)
+                .put("international_rate_multiplier", JSONObject.NULL)
+                .put("sms_rate", JSONObject.NULL)
+                .put("billable_sheets_of_paper", JSONObject.NULL)
+                .put("postage", JSONObject.NULL);
+        return new JSONObject()
+                .put("id", UUID.randomUUID().toString())
+                .put("reference", "reconciliation-" + UUID.randomUUID())
+                .put("email_address", "someone@example.gov.uk")
+                .put("phone_number", JSONObject.NULL)
+                .put("line_1", JSONObject.NULL)
+                .put("line_2", JSONObject.NULL)
+                .put("line_3", JSONObject.NULL)
+                .put("line_4", JSONObject.NULL)
+                .put("line_5", JSONObject.NULL)
+                .put("line_6", JSONObject.NULL)
+                .put("postcode", JSONObject.NULL)
+                .put("postage", JSONObject.NULL)
+                .put("type", "email")
+                .put("status", "delivered")
+                .put("template", template)
+                .put("body", text(bodyLength))
+                .put("subject", "Your application has been received")
+                .put("created_at", "2024-05-10T16:40:14.000000Z")
+                .put("created_by_name", JSONObject.NULL)
+                .put("sent_at", "2024-05-10T16:40:15.000000Z")
+                .put("completed_at", "2024-05-10T16:40:43.000000Z")
+                .put("estimated_delivery", JSONObject.NULL)
+                .put("is_cost_data_ready", true)
+                .put("cost_in_pounds", 0.0)
+                .put("cost_details", costDetails);
+    }
+
+    static String notificationList(int size, int bodyLength) {
+        JSONArray notifications = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            notifications.put(notification(bodyLength));
+        }
+        JSONObject links = new JSONObject()
+                .put("current", "https://api.notifications.service.gov.uk/v2/notifications")
+                .put("next", "https://api.notifications.service.gov.uk/v2/notifications?older_than=" + UUID.randomUUID());
+        return new JSONObject().put("notifications", notifications).put("links", links).toString();
+    }
+
+    static JSONObject template(int bodyLength) {
+        return new JSONObject()
+                .put("id", UUID.randomUUID().toString())
+                .put("name", "Application received")
+                .put("type", "email")
+                .put("created_at", "2024-05-10T16:40:14.000000Z")
+                .put("updated_at", "2024-05-11T09:12:01.000000Z")
+                .put("version", 7)
+                .put("created_by", "someone@example.gov.uk")
+                .put("body", text(bodyLength))
+                .put("subject", "Your application ((reference)) has been received")
+                .put("letter_contact_block", JSONObject.NULL);
+    }
+
+    static String templateList(int size, int bodyLength) {
+        JSONArray templates = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            templates.put(template(bodyLength));
+        }
+        return new JSONObject().put("templates", templates).toString();
+    }
+
+    /**
+     * @return a minimal PDF padded with a comment to roughly the given size
+     */
+    static byte[] pdf(int size) {
+        StringBuilder pdf = new StringBuilder("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        while (pdf.length() < size) {
+            pdf.append("% padding to make the document a realistic size for a letter\n");
+        }
+        pdf.append("%%EOF\n");
+        return pdf.toString().getBytes(ISO_8859_1);
+    }
+
+    static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        String paragraph = "Dear ((name)),\n\nThank you for your application. We will contact you within 10 working days. ";
+        while (text.length() < length) {
+            text.append(paragraph);
+        }
+        return text.substring(0, length);
+    }
+}
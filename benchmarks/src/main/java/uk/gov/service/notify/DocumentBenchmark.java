@@ -0,0 +1,52 @@
+package uk.gov.service.notify;
+
+import org.apache.commons.codec.binary.Base64;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking and encoding the documents sent as precompiled letters and file uploads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentBenchmark {
+
+    @Param({"65536", "2000000"})
+    public int documentSize;
+
+    private byte[] pdf;
+    private String base64Pdf;
+
+    @Setup
+    public void setUp() {
+        pdf = BenchmarkData.pdf(documentSize);
+        base64Pdf = Base64.encodeBase64String(pdf);
+    }
+
+    @Benchmark
+    public boolean isBase64StringPDF() {
+        return PdfUtils.isBase64StringPDF(base64Pdf);
+    }
+
+    @Benchmark
+    public String prepareUpload() throws NotificationClientException {
+        JSONObject upload = NotificationClient.prepareUpload(pdf, "letter.pdf");
+        return upload.toString();
+    }
+}
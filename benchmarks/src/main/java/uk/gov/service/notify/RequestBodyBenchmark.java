@@ -0,0 +1,64 @@
+package uk.gov.service.notify;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serialising the JSON body of a send, up to the bytes written to the connection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBodyBenchmark {
+
+    @Param({"3", "30"})
+    public int placeholders;
+
+    private NotificationClient client;
+    private Map<String, Object> personalisation;
+    private final OutputStream connection = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        client = new NotificationClient(BenchmarkData.API_KEY, "http://localhost");
+        personalisation = new HashMap<>();
+        for (int i = 0; i < placeholders; i++) {
+            personalisation.put("placeholder_" + i, BenchmarkData.text(40));
+        }
+    }
+
+    @Benchmark
+    public long createBodyForPostRequest() throws IOException {
+        try (JsonBody body = client.createBodyForPostRequest("f33517ff-2a88-4f6e-b855-c550268ce08a", null,
+                "someone@example.gov.uk", personalisation, "a reference", null, null)) {
+            body.writeTo(connection);
+            return body.contentLength();
+        }
+    }
+}
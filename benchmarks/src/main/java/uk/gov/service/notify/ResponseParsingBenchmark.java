@@ -0,0 +1,96 @@
+package uk.gov.service.notify;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Turning response bodies into the client's model classes. A page of notifications holds 250 items, the most
+ * the API returns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseParsingBenchmark {
+
+    @Param({"200", "4000"})
+    public int bodyLength;
+
+    private String notification;
+    private String notificationList;
+    private byte[] notificationListBytes;
+    private String template;
+    private String templateList;
+
+    @Setup
+    public void setUp() {
+        notification = BenchmarkData.notification(bodyLength).toString();
+        notificationList = BenchmarkData.notificationList(250, bodyLength);
+        notificationListBytes = notificationList.getBytes(UTF_8);
+        template = BenchmarkData.template(bodyLength).toString();
+        templateList = BenchmarkData.templateList(50, bodyLength);
+    }
+
+    @Benchmark
+    public Notification notification() {
+        return new Notification(notification);
+    }
+
+    @Benchmark
+    public NotificationList notificationListFromString() {
+        return new NotificationList(notificationList);
+    }
+
+    @Benchmark
+    public NotificationList notificationListFromStream() {
+        return NotificationList.parse(new ByteArrayInputStream(notificationListBytes));
+    }
+
+    @Benchmark
+    public NotificationList notificationListToConsumer(Blackhole blackhole) {
+        return NotificationList.parse(new ByteArrayInputStream(notificationListBytes), blackhole::consume);
+    }
+
+    @Benchmark
+    public void notificationListStatusesLazily(Blackhole blackhole) {
+        NotificationList.parse(new ByteArrayInputStream(notificationListBytes), notification -> {
+            blackhole.consume(notification.getId());
+            blackhole.consume(notification.getStatus());
+        }, true);
+    }
+
+    @Benchmark
+    public void notificationListStatusesEagerly(Blackhole blackhole) {
+        NotificationList.parse(new ByteArrayInputStream(notificationListBytes), notification -> {
+            blackhole.consume(notification.getId());
+            blackhole.consume(notification.getStatus());
+        }, false);
+    }
+
+    @Benchmark
+    public Template template() {
+        return new Template(template);
+    }
+
+    @Benchmark
+    public TemplateList templateList() {
+        return new TemplateList(templateList);
+    }
+}
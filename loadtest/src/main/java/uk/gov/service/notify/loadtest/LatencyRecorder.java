@@ -0,0 +1,51 @@
+package uk.gov.service.notify.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every latency recorded by one worker thread, so percentiles are exact rather than estimated.
+ * A run of a few million requests needs a few tens of megabytes, which is fine for a load test.
+ */
+final class LatencyRecorder {
+
+    private long[] latencies = new long[1 << 16];
+    private int count;
+
+    void record(long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    static long[] merge(Iterable<LatencyRecorder> recorders) {
+        int total = 0;
+        for (LatencyRecorder recorder : recorders) {
+            total += recorder.count;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, merged, offset, recorder.count);
+            offset += recorder.count;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * @param sorted    latencies in ascending order
+     * @param percentile between 0 and 100
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
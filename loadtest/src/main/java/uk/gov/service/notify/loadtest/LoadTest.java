@@ -0,0 +1,204 @@
+package uk.gov.service.notify.loadtest;
+
+import uk.gov.service.notify.ApacheHttpClientTransport;
+import uk.gov.service.notify.HttpTransport;
+import uk.gov.service.notify.HttpUrlConnectionTransport;
+import uk.gov.service.notify.NotificationClient;
+import uk.gov.service.notify.NotificationClientException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a <code>NotificationClient</code> from many threads against a local <code>StubNotifyServer</code>, or
+ * another base URL, and reports throughput and latency percentiles.
+ * <p>
+ * With a target rate, each request has a scheduled start time and its latency is measured from then, not from when
+ * a thread got round to sending it. A stall therefore shows up in the percentiles instead of hiding behind the
+ * requests that were never sent while it lasted.
+ * <p>
+ * Options, all given as <code>--name=value</code>:
+ * <ul>
+ *     <li><code>operation</code>: sendEmail, sendSms, getNotifications or getTemplate. Defaults to sendEmail.</li>
+ *     <li><code>concurrency</code>: the number of threads sending requests. Defaults to 16.</li>
+ *     <li><code>rate</code>: the target requests per second across all threads, or 0 to send as fast as possible. Defaults to 0.</li>
+ *     <li><code>duration</code> and <code>warmup</code>: seconds to measure for, after seconds of unmeasured warm up. Default to 30 and 5.</li>
+ *     <li><code>transport</code>: urlconnection or apache. Defaults to urlconnection.</li>
+ *     <li><code>maxConnections</code>: the connection pool size for the apache transport. Defaults to the concurrency.</li>
+ *     <li><code>tokenReuseSeconds</code>: passed to <code>NotificationClient.Builder</code>. Defaults to 0.</li>
+ *     <li><code>baseUrl</code>: send to this URL instead of starting a stub server.</li>
+ *     <li><code>responseDelay</code>: milliseconds the stub waits before answering. Defaults to 0.</li>
+ *     <li><code>pageSize</code>: notifications in the stub's page. Defaults to 250.</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    private static final String API_KEY = "loadtest-" + UUID.randomUUID() + "-" + UUID.randomUUID();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String operation = options.getOrDefault("operation", "sendEmail");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        String transportName = options.getOrDefault("transport", "urlconnection");
+        int maxConnections = Integer.parseInt(options.getOrDefault("maxConnections", String.valueOf(concurrency)));
+        int tokenReuseSeconds = Integer.parseInt(options.getOrDefault("tokenReuseSeconds", "0"));
+        long responseDelay = Long.parseLong(options.getOrDefault("responseDelay", "0"));
+        int pageSize = Integer.parseInt(options.getOrDefault("pageSize", "250"));
+
+        StubNotifyServer stub = options.containsKey("baseUrl") ? null : new StubNotifyServer(concurrency, responseDelay, pageSize);
+        String baseUrl = stub == null ? options.get("baseUrl") : stub.getBaseUrl();
+        try (HttpTransport transport = createTransport(transportName, maxConnections)) {
+            NotificationClient client = NotificationClient.builder(API_KEY)
+                    .baseUrl(baseUrl)
+                    .transport(transport)
+                    .tokenReuseSeconds(tokenReuseSeconds)
+                    .build();
+            Request request = createRequest(operation, client);
+
+            System.out.printf(Locale.ROOT, "%s against %s with %d threads, %s, transport %s%n", operation, baseUrl,
+                    concurrency, rate > 0 ? rate + " requests/s" : "unthrottled", transportName);
+            Result result = run(request, concurrency, rate, TimeUnit.SECONDS.toNanos(warmupSeconds), TimeUnit.SECONDS.toNanos(durationSeconds));
+            result.print();
+        } finally {
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    static Result run(Request request, int concurrency, double rate, long warmupNanos, long durationNanos) throws InterruptedException {
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        AtomicLong nextSlot = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<LatencyRecorder> recorders = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(concurrency);
+
+        for (int i = 0; i < concurrency; i++) {
+            Thread worker = new Thread(() -> {
+                LatencyRecorder recorder = new LatencyRecorder();
+                recorders.add(recorder);
+                try {
+                    while (true) {
+                        long scheduled = intervalNanos > 0 ? start + nextSlot.getAndIncrement() * intervalNanos : System.nanoTime();
+                        if (scheduled >= end) {
+                            return;
+                        }
+                        long wait;
+                        while ((wait = scheduled - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        boolean failed = false;
+                        try {
+                            request.send();
+                        } catch (NotificationClientException e) {
+                            failed = true;
+                        }
+                        if (scheduled >= measureFrom) {
+                            recorder.record(System.nanoTime() - scheduled);
+                            if (failed) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            }, "loadtest-" + i);
+            worker.start();
+        }
+        finished.await();
+        long elapsed = Math.max(System.nanoTime(), end) - measureFrom;
+        return new Result(LatencyRecorder.merge(recorders), errors.get(), elapsed);
+    }
+
+    private static HttpTransport createTransport(String name, int maxConnections) {
+        switch (name) {
+            case "urlconnection":
+                return new HttpUrlConnectionTransport();
+            case "apache":
+                return ApacheHttpClientTransport.builder()
+                        .maxConnectionsTotal(maxConnections)
+                        .maxConnectionsPerRoute(maxConnections)
+                        .build();
+            default:
+                throw new IllegalArgumentException("Unknown transport " + name);
+        }
+    }
+
+    private static Request createRequest(String operation, NotificationClient client) {
+        Map<String, Object> personalisation = new HashMap<>();
+        personalisation.put("name", "Jo Bloggs");
+        personalisation.put("reference", "ABC-123");
+        String templateId = UUID.randomUUID().toString();
+        switch (operation) {
+            case "sendEmail":
+                return () -> client.sendEmail(templateId, "someone@example.gov.uk", personalisation, "loadtest");
+            case "sendSms":
+                return () -> client.sendSms(templateId, "07700900000", personalisation, "loadtest");
+            case "getNotifications":
+                return () -> client.getNotifications(null, null, null, null);
+            case "getTemplate":
+                return () -> client.getTemplateById(templateId);
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options look like --name=value, not " + arg);
+            }
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    interface Request {
+        void send() throws NotificationClientException;
+    }
+
+    static final class Result {
+        private final long[] latencies;
+        private final long errors;
+        private final long elapsedNanos;
+
+        Result(long[] latencies, long errors, long elapsedNanos) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double getRequestsPerSecond() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        void print() {
+            System.out.printf(Locale.ROOT, "requests %d, errors %d, %.1f requests/s%n", latencies.length, errors, getRequestsPerSecond());
+            System.out.printf(Locale.ROOT, "latency ms: p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+                    millis(50), millis(90), millis(99), millis(99.9), millis(100));
+        }
+
+        private double millis(double percentile) {
+            return LatencyRecorder.percentile(latencies, percentile) / 1e6;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package uk.gov.service.notify.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A stand-in for the Notify API on the loopback interface, built on the JDK's own HTTP server so that it adds as
+ * little as possible to the latencies being measured.
+ * <p>
+ * Every response is prepared up front. Sends return a canned 201 and <code>/v2/notifications</code> returns the
+ * same full page every time, with no next page. An optional delay simulates the time the real API spends on a
+ * request.
+ */
+public class StubNotifyServer implements AutoCloseable {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long responseDelayMillis;
+    private final byte[] emailResponse;
+    private final byte[] smsResponse;
+    private final byte[] notificationsPage;
+    private final byte[] templateResponse;
+
+    /**
+     * @param threads             the number of threads serving requests
+     * @param responseDelayMillis how long to wait before answering each request
+     * @param pageSize            the number of notifications returned by <code>/v2/notifications</code>
+     */
+    public StubNotifyServer(int threads, long responseDelayMillis, int pageSize) throws IOException {
+        this.responseDelayMillis = responseDelayMillis;
+        this.emailResponse = sendResponse("from_email", "service@notifications.service.gov.uk");
+        this.smsResponse = sendResponse("from_number", "GOVUK");
+        this.notificationsPage = notificationsPage(pageSize);
+        this.templateResponse = template().toString().getBytes(UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/v2/notifications", this::handleNotifications);
+        server.createContext("/v2/template/", exchange -> respond(exchange, 200, templateResponse));
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleNotifications(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (exchange.getRequestMethod().equals("GET") && path.equals("/v2/notifications")) {
+            respond(exchange, 200, notificationsPage);
+        } else if (path.equals("/v2/notifications/email")) {
+            respond(exchange, 201, emailResponse);
+        } else if (path.equals("/v2/notifications/sms")) {
+            respond(exchange, 201, smsResponse);
+        } else {
+            respond(exchange, 404, EMPTY);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        try (InputStream request = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            while (request.read(buffer) != -1) {
+                // read the whole request so the connection can be kept alive
+            }
+        }
+        if (responseDelayMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream response = exchange.getResponseBody()) {
+            response.write(body);
+        }
+    }
+
+    private static byte[] sendResponse(String fromField, String from) {
+        JSONObject content = new JSONObject()
+                .put("body", "Dear applicant, thank you for your application.")
+                .put("subject", "Application received")
+                .put(fromField, from);
+        JSONObject template = new JSONObject()
+                .put("id", UUID.randomUUID().toString())
+                .put("version", 1)
+                .put("uri", "http://localhost/v2/template");
+        return new JSONObject()
+                .put("id", UUID.randomUUID().toString())
+                .put("reference", "a reference")
+                .put("content", content)
+                .put("uri", JSONObject.NULL)
+                .put("template", template)
+                .toString().getBytes(UTF_8);
+    }
+
+    private static byte[] notificationsPage(int size) {
+        JSONArray notifications = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            UUID templateId = UUID.randomUUID();
+            notifications.put(new JSONObject()
+                    .put("id", UUID.randomUUID().toString())
+                    .put("reference", "reference-" + i)
+                    .put("email_address", "someone@example.gov.uk")
+                    .put("phone_number", JSONObject.NULL)
+                    .put("type", "email")
+                    .put("status", "delivered")
+                    .put("template", new JSONObject()
+                            .put("id", templateId.toString())
+                            .put("version", 1)
+                            .put("uri", "http://localhost/v2/template/" + templateId))
+                    .put("body", "Dear applicant, thank you for your application. We will contact you within 10 working days.")
+                    .put("subject", "Application received")
+                    .put("created_at", "2024-05-10T16:40:14.000000Z")
+                    .put("sent_at", "2024-05-10T16:40:15.000000Z")
+                    .put("completed_at", "2024-05-10T16:40:43.000000Z")
+                    .put("is_cost_data_ready", true)
+                    .put("cost_in_pounds", 0.0)
+                    .put("cost_details", new JSONObject()));
+        }
+        JSONObject links = new JSONObject()
+                .put("current", "http://localhost/v2/notifications")
+                .put("next", JSONObject.NULL);
+        return new JSONObject().put("notifications", notifications).put("links", links).toString().getBytes(UTF_8);
+    }
+
+    private static JSONObject template() {
+        return new JSONObject()
+                .put("id", UUID.randomUUID().toString())
+                .put("name", "Application received")
+                .put("type", "email")
+                .put("created_at", "2024-05-10T16:40:14.000000Z")
+                .put("updated_at", JSONObject.NULL)
+                .put("version", 1)
+                .put("created_by", "someone@example.gov.uk")
+                .put("body", "Dear ((name)), thank you for your application.")
+                .put("subject", "Application received")
+                .put("letter_contact_block", JSONObject.NULL);
+    }
+}
@@ -0,0 +1,243 @@
+package uk.gov.service.notify;
+
+/**
+ * Limits how many sends are in flight at once, and finds that limit by itself from how Notify responds.
+ * <p>
+ * The limit grows additively, by about one for each limit's worth of successful requests, while latency stays near
+ * the lowest seen. It is cut multiplicatively when Notify responds with a 429 or a 5xx error, when a connection
+ * fails, or when the smoothed latency rises past a multiple of the lowest seen, which is the sign of requests
+ * queueing at Notify. A burst of failures from requests that were all in flight together only cuts the limit once.
+ * This is the additive-increase, multiplicative-decrease scheme TCP uses, with a latency signal in the style of
+ * TCP Vegas so the limit backs off before Notify starts rejecting requests.
+ * <p>
+ * The lowest latency is forgotten every <code>probeInterval</code> requests and measured again, so the limiter
+ * follows Notify's baseline if it changes.
+ * <p>
+ * Requests over the limit wait on the calling thread. A single limiter can be shared by several clients. Read
+ * {@link #getLimit()} to chart the limit that the limiter has settled on.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final double SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final int probeInterval;
+
+    private double limit;
+    private int inFlight;
+    private long minRttNanos;
+    private double smoothedRttNanos;
+    private long lastDecreaseNanos;
+    private long samples;
+    private long decreases;
+
+    private AdaptiveConcurrencyLimiter(Builder builder) {
+        if (builder.minLimit < 1 || builder.maxLimit < builder.minLimit
+                || builder.initialLimit < builder.minLimit || builder.initialLimit > builder.maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (builder.backoffRatio <= 0 || builder.backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+        }
+        if (builder.latencyTolerance <= 1) {
+            throw new IllegalArgumentException("latencyTolerance must be greater than 1");
+        }
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyTolerance = builder.latencyTolerance;
+        this.probeInterval = builder.probeInterval;
+        this.limit = builder.initialLimit;
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the number of requests currently allowed in flight at once
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the lowest latency seen since the last probe, in nanoseconds, or 0 if there has been no request since
+     */
+    public synchronized long getMinRttNanos() {
+        return minRttNanos;
+    }
+
+    /**
+     * @return the number of times the limit has been cut
+     */
+    public synchronized long getDecreaseCount() {
+        return decreases;
+    }
+
+    /**
+     * Waits until fewer requests than the limit are in flight, and takes a place for one more.
+     *
+     * @return the time spent waiting, in nanoseconds
+     * @throws NotificationClientException if the thread is interrupted while waiting
+     */
+    synchronized long acquire() throws NotificationClientException {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return 0;
+        }
+        long started = System.nanoTime();
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NotificationClientException("Interrupted while waiting for the adaptive concurrency limit", e);
+            }
+        }
+        inFlight++;
+        return System.nanoTime() - started;
+    }
+
+    /**
+     * Gives up the place taken by <code>acquire</code> for a request that Notify accepted.
+     *
+     * @param startedNanos when the request was sent, from <code>System.nanoTime()</code>
+     * @param rttNanos     how long Notify took to respond
+     */
+    synchronized void onSuccess(long startedNanos, long rttNanos) {
+        inFlight--;
+        if (++samples % probeInterval == 0) {
+            minRttNanos = 0;
+        }
+        if (minRttNanos == 0 || rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+        }
+        smoothedRttNanos = smoothedRttNanos == 0 ? rttNanos : smoothedRttNanos + (rttNanos - smoothedRttNanos) * SMOOTHING;
+        if (smoothedRttNanos > minRttNanos * latencyTolerance) {
+            decrease(startedNanos);
+        } else if (inFlight + 1 >= limit / 2) {
+            // Only grow while the limit is actually being used, or it would creep up during quiet periods
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Gives up the place taken by <code>acquire</code> for a request that failed because Notify or the network
+     * was overloaded.
+     *
+     * @param startedNanos when the request was sent, from <code>System.nanoTime()</code>
+     */
+    synchronized void onDropped(long startedNanos) {
+        inFlight--;
+        decrease(startedNanos);
+        notifyAll();
+    }
+
+    /**
+     * Gives up the place taken by <code>acquire</code> for a request whose outcome says nothing about load, such as
+     * a validation error.
+     */
+    synchronized void onIgnored() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private void decrease(long startedNanos) {
+        // Requests sent before the last cut saw the old limit, so they must not cut it again
+        if (startedNanos - lastDecreaseNanos > 0) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            lastDecreaseNanos = System.nanoTime();
+            decreases++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveConcurrencyLimiter{" +
+                "limit=" + (int) limit +
+                ", inFlight=" + inFlight +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                ", minRttNanos=" + minRttNanos +
+                '}';
+    }
+
+    public static final class Builder {
+        private int initialLimit = 10;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.7;
+        private double latencyTolerance = 2.0;
+        private int probeInterval = 1000;
+
+        private Builder() {
+        }
+
+        /**
+         * @param initialLimit the number of requests allowed in flight before anything has been measured, defaults to 10
+         */
+        public Builder initialLimit(final int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * @param minLimit the limit is never cut below this, defaults to 1
+         */
+        public Builder minLimit(final int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * @param maxLimit the limit never grows above this, defaults to 200
+         */
+        public Builder maxLimit(final int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * @param backoffRatio what the limit is multiplied by when it is cut, between 0 and 1, defaults to 0.7
+         */
+        public Builder backoffRatio(final double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * @param latencyTolerance how many times the lowest latency the smoothed latency can reach before the limit
+         *                         is cut, defaults to 2.0
+         */
+        public Builder latencyTolerance(final double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        /**
+         * @param probeInterval how many requests the lowest latency is kept for before it is measured again,
+         *                      defaults to 1000
+         */
+        public Builder probeInterval(final int probeInterval) {
+            if (probeInterval < 1) {
+                throw new IllegalArgumentException("probeInterval must be at least 1");
+            }
+            this.probeInterval = probeInterval;
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimiter build() {
+            return new AdaptiveConcurrencyLimiter(this);
+        }
+    }
+}
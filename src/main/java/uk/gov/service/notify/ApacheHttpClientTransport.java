@@ -0,0 +1,284 @@
+package uk.gov.service.notify;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <code>HttpTransport</code> backed by a pooling Apache HttpClient.
+ * <p>
+ * Connections are kept alive and shared between requests, up to {@link Builder#maxConnectionsPerRoute(int)}
+ * per host. Idle connections are evicted in the background and pooled connections that have been idle for a
+ * while are validated before being reused. Create one instance and share it between all your clients, and
+ * close it when your application shuts down.
+ */
+public class ApacheHttpClientTransport implements HttpTransport {
+
+    private final CloseableHttpClient httpClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private ApacheHttpClientTransport(Builder builder) {
+        SSLConnectionSocketFactory sslSocketFactory = builder.sslContext != null
+                ? new SSLConnectionSocketFactory(builder.sslContext)
+                : SSLConnectionSocketFactory.getSystemSocketFactory();
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+
+        connectionManager = new PoolingHttpClientConnectionManager(
+                socketFactories, null, null, null, builder.timeToLiveMillis, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(builder.maxConnectionsTotal);
+        connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(builder.validateAfterInactivityMillis);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(builder.connectTimeoutMillis)
+                .setSocketTimeout(builder.socketTimeoutMillis)
+                .setConnectionRequestTimeout(builder.connectionRequestTimeoutMillis)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setProxy(toHttpHost(builder.proxy))
+                .evictExpiredConnections()
+                .evictIdleConnections(builder.maxIdleTimeMillis, TimeUnit.MILLISECONDS)
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public HttpTransportResponse execute(HttpTransportRequest request) throws IOException {
+        RequestBuilder requestBuilder = RequestBuilder.create(request.getMethod()).setUri(request.getUrl());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            requestBuilder.setHeader(header.getKey(), header.getValue());
+        }
+        if (request.getBody() != null) {
+            requestBuilder.setEntity(new RequestBodyEntity(request.getBody()));
+        }
+
+        final CloseableHttpResponse response;
+        try {
+            response = httpClient.execute(requestBuilder.build());
+        } catch (ConnectTimeoutException | UnknownHostException | NoRouteToHostException e) {
+            // nothing has been sent yet, so report it as a failure to connect, which is safe to retry
+            ConnectException connectFailed = new ConnectException(e.toString());
+            connectFailed.initCause(e);
+            throw connectFailed;
+        }
+        final HttpEntity entity;
+        final InputStream body;
+        try {
+            entity = response.getEntity();
+            body = entity != null ? entity.getContent() : null;
+        } catch (IOException | RuntimeException e) {
+            // the connection goes back to the pool only when the response is closed
+            try {
+                response.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+        return new HttpTransportResponse(response.getStatusLine().getStatusCode(), body, () -> {
+            try {
+                EntityUtils.consume(entity);
+            } finally {
+                response.close();
+            }
+        }, -1, name -> {
+            Header header = response.getFirstHeader(name);
+            return header != null ? header.getValue() : null;
+        });
+    }
+
+    /**
+     * @return the number of connections currently open to the Notify API, leased or idle
+     */
+    public int getOpenConnections() {
+        return connectionManager.getTotalStats().getLeased() + connectionManager.getTotalStats().getAvailable();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private static HttpHost toHttpHost(Proxy proxy) {
+        if (proxy == null || proxy.type() == Proxy.Type.DIRECT) {
+            return null;
+        }
+        if (proxy.type() != Proxy.Type.HTTP || !(proxy.address() instanceof InetSocketAddress)) {
+            throw new IllegalArgumentException("Only HTTP proxies are supported: " + proxy);
+        }
+        InetSocketAddress address = (InetSocketAddress) proxy.address();
+        return new HttpHost(address.getHostString(), address.getPort());
+    }
+
+    /**
+     * Streams the body straight to the connection in <code>writeTo</code>. A <code>RequestBody</code> can be written
+     * any number of times, so the entity is repeatable, and <code>getContent</code> writes it once more into a buffer
+     * for anything that asks to read it rather than have it written.
+     */
+    static final class RequestBodyEntity extends AbstractHttpEntity {
+        private final RequestBody body;
+
+        RequestBodyEntity(RequestBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            long length = body.contentLength();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(length >= 0 && length < Integer.MAX_VALUE ? (int) length : 8192);
+            body.writeTo(buffer);
+            return new ByteArrayInputStream(buffer.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            body.writeTo(outStream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    public static final class Builder {
+        private int maxConnectionsTotal = 20;
+        private int maxConnectionsPerRoute = 10;
+        private long maxIdleTimeMillis = TimeUnit.SECONDS.toMillis(30);
+        private long timeToLiveMillis = -1;
+        private int validateAfterInactivityMillis = 2000;
+        private int connectTimeoutMillis = -1;
+        private int socketTimeoutMillis = -1;
+        private int connectionRequestTimeoutMillis = -1;
+        private Proxy proxy;
+        private SSLContext sslContext;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxConnectionsTotal the maximum number of open connections across all hosts, defaults to 20
+         */
+        public Builder maxConnectionsTotal(int maxConnectionsTotal) {
+            this.maxConnectionsTotal = maxConnectionsTotal;
+            return this;
+        }
+
+        /**
+         * @param maxConnectionsPerRoute the maximum number of open connections to a single host, defaults to 10
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * @param maxIdleTime connections left idle in the pool for longer than this are closed, defaults to 30 seconds
+         */
+        public Builder maxIdleTime(long maxIdleTime, TimeUnit unit) {
+            this.maxIdleTimeMillis = unit.toMillis(maxIdleTime);
+            return this;
+        }
+
+        /**
+         * @param timeToLive connections are never reused after this long, regardless of activity.
+         *                   Defaults to unlimited.
+         */
+        public Builder timeToLive(long timeToLive, TimeUnit unit) {
+            this.timeToLiveMillis = unit.toMillis(timeToLive);
+            return this;
+        }
+
+        /**
+         * @param validateAfterInactivity pooled connections idle for longer than this are checked to be
+         *                                still open before being reused, defaults to 2 seconds
+         */
+        public Builder validateAfterInactivity(long validateAfterInactivity, TimeUnit unit) {
+            this.validateAfterInactivityMillis = (int) unit.toMillis(validateAfterInactivity);
+            return this;
+        }
+
+        public Builder connectTimeout(long connectTimeout, TimeUnit unit) {
+            this.connectTimeoutMillis = (int) unit.toMillis(connectTimeout);
+            return this;
+        }
+
+        public Builder socketTimeout(long socketTimeout, TimeUnit unit) {
+            this.socketTimeoutMillis = (int) unit.toMillis(socketTimeout);
+            return this;
+        }
+
+        /**
+         * @param connectionRequestTimeout how long to wait for a free connection when the pool is exhausted
+         */
+        public Builder connectionRequestTimeout(long connectionRequestTimeout, TimeUnit unit) {
+            this.connectionRequestTimeoutMillis = (int) unit.toMillis(connectionRequestTimeout);
+            return this;
+        }
+
+        /**
+         * @param proxy an HTTP proxy used on the http requests
+         */
+        public Builder proxy(Proxy proxy) {
+            this.proxy = proxy;
+            return this;
+        }
+
+        public Builder sslContext(SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        public ApacheHttpClientTransport build() {
+            return new ApacheHttpClientTransport(this);
+        }
+    }
+}
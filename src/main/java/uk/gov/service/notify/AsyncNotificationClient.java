@@ -0,0 +1,301 @@
+package uk.gov.service.notify;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <code>CompletableFuture</code> view of a <code>NotificationClientApi</code>.
+ * <p>
+ * Each method mirrors the method of the same name on <code>NotificationClientApi</code> and returns a
+ * <code>CompletableFuture</code> straight away. The request itself is the same blocking call, made on a thread of
+ * the given executor, which it holds until Notify responds; this does not use non-blocking I/O. Failures complete
+ * the future exceptionally with the same <code>NotificationClientException</code> the blocking call would throw.
+ * <p>
+ * At most <code>maxInFlight</code> requests run at once. Calls made while that many are outstanding never block
+ * the caller: the request is queued and started when an earlier one completes, so it is safe to make calls from a
+ * callback running on the executor. The queue is not bounded, so a producer that can outrun Notify should watch
+ * {@link #getQueued()} or use <code>BulkSender</code>, which only takes requests as fast as earlier ones complete.
+ * <p>
+ * Given a <code>ScheduledExecutorService</code> and a <code>NotificationClient</code> with retry policies, the
+ * waits between attempts are scheduled on it rather than spent sleeping on an executor thread. A request keeps its
+ * place in the in-flight limit until its last attempt completes.
+ */
+public class AsyncNotificationClient {
+
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final NotificationClientApi client;
+    private final NotificationClientApi attemptClient;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final RetryPolicy retryPolicy;
+    private final RetryPolicy sendRetryPolicy;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Queue<Runnable> queued = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param client   the client used to send the requests
+     * @param executor runs the requests, for example a fixed thread pool shared across your application
+     */
+    public AsyncNotificationClient(final NotificationClientApi client, final Executor executor) {
+        this(client, executor, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param client      the client used to send the requests
+     * @param executor    runs the requests, for example a fixed thread pool shared across your application
+     * @param maxInFlight the maximum number of requests in flight at once, defaults to 64
+     */
+    public AsyncNotificationClient(final NotificationClientApi client, final Executor executor, final int maxInFlight) {
+        this(client, executor, maxInFlight, null);
+    }
+
+    /**
+     * @param client      the client used to send the requests. If it is a <code>NotificationClient</code>, its retry
+     *                    policies are applied here instead of inside the client.
+     * @param executor    runs the requests, for example a fixed thread pool shared across your application
+     * @param maxInFlight the maximum number of requests in flight at once, defaults to 64
+     * @param scheduler   schedules retries after their backoff delay, or null to leave retrying to the client
+     */
+    public AsyncNotificationClient(final NotificationClientApi client,
+                                   final Executor executor,
+                                   final int maxInFlight,
+                                   final ScheduledExecutorService scheduler) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.client = client;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        if (scheduler != null && client instanceof NotificationClient) {
+            NotificationClient notificationClient = (NotificationClient) client;
+            this.attemptClient = notificationClient.withoutRetries();
+            this.retryPolicy = notificationClient.getRetryPolicy();
+            this.sendRetryPolicy = notificationClient.getSendRetryPolicy();
+        } else {
+            this.attemptClient = client;
+            this.retryPolicy = RetryPolicy.none();
+            this.sendRetryPolicy = RetryPolicy.none();
+        }
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public NotificationClientApi getClient() {
+        return client;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return the number of requests started but not yet completed
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * @return the number of requests waiting for one in flight to complete before they start
+     */
+    public int getQueued() {
+        return queued.size();
+    }
+
+    public CompletableFuture<SendEmailResponse> sendEmailAsync(String templateId, String emailAddress, Map<String, ?> personalisation, String reference) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendEmail(templateId, emailAddress, personalisation, reference));
+    }
+
+    public CompletableFuture<SendEmailResponse> sendEmailAsync(String templateId, String emailAddress, Map<String, ?> personalisation, String reference, String emailReplyToId) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendEmail(templateId, emailAddress, personalisation, reference, emailReplyToId));
+    }
+
+    public CompletableFuture<SendEmailResponse> sendEmailAsync(String templateId, String emailAddress, Map<String, ?> personalisation, String reference, String emailReplyToId, URI oneClickUnsubscribeURL) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendEmail(templateId, emailAddress, personalisation, reference, emailReplyToId, oneClickUnsubscribeURL));
+    }
+
+    public CompletableFuture<SendSmsResponse> sendSmsAsync(String templateId, String phoneNumber, Map<String, ?> personalisation, String reference) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendSms(templateId, phoneNumber, personalisation, reference));
+    }
+
+    public CompletableFuture<SendSmsResponse> sendSmsAsync(String templateId, String phoneNumber, Map<String, ?> personalisation, String reference, String smsSenderId) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendSms(templateId, phoneNumber, personalisation, reference, smsSenderId));
+    }
+
+    public CompletableFuture<SendLetterResponse> sendLetterAsync(String templateId, Map<String, ?> personalisation, String reference) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendLetter(templateId, personalisation, reference));
+    }
+
+    public CompletableFuture<LetterResponse> sendPrecompiledLetterAsync(String reference, File precompiledPDF) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendPrecompiledLetter(reference, precompiledPDF));
+    }
+
+    public CompletableFuture<LetterResponse> sendPrecompiledLetterAsync(String reference, File precompiledPDF, String postage) {
+        return submit(sendRetryPolicy, () -> attemptClient.sendPrecompiledLetter(reference, precompiledPDF, postage));
+    }
+
+    public CompletableFuture<LetterResponse> sendPrecompiledLetterWithInputStreamAsync(String reference, InputStream stream) {
+        ReplayableStream replayable = new ReplayableStream(stream);
+        return submit(sendRetryPolicy, () -> attemptClient.sendPrecompiledLetterWithInputStream(reference, replayable.open()));
+    }
+
+    public CompletableFuture<LetterResponse> sendPrecompiledLetterWithInputStreamAsync(String reference, InputStream stream, String postage) {
+        ReplayableStream replayable = new ReplayableStream(stream);
+        return submit(sendRetryPolicy, () -> attemptClient.sendPrecompiledLetterWithInputStream(reference, replayable.open(), postage));
+    }
+
+    public CompletableFuture<Notification> getNotificationByIdAsync(String notificationId) {
+        return submit(retryPolicy, () -> attemptClient.getNotificationById(notificationId));
+    }
+
+    public CompletableFuture<byte[]> getPdfForLetterAsync(String notificationId) {
+        return submit(retryPolicy, () -> attemptClient.getPdfForLetter(notificationId));
+    }
+
+    public CompletableFuture<Long> getPdfForLetterAsync(String notificationId, Path destination) {
+        return submit(retryPolicy, () -> attemptClient.getPdfForLetter(notificationId, destination));
+    }
+
+    public CompletableFuture<NotificationList> getNotificationsAsync(String status, String notification_type, String reference, String olderThanId) {
+        return submit(retryPolicy, () -> attemptClient.getNotifications(status, notification_type, reference, olderThanId));
+    }
+
+    public CompletableFuture<Template> getTemplateByIdAsync(String templateId) {
+        return submit(retryPolicy, () -> attemptClient.getTemplateById(templateId));
+    }
+
+    public CompletableFuture<Template> getTemplateVersionAsync(String templateId, int version) {
+        return submit(retryPolicy, () -> attemptClient.getTemplateVersion(templateId, version));
+    }
+
+    public CompletableFuture<TemplateList> getAllTemplatesAsync(String templateType) {
+        return submit(retryPolicy, () -> attemptClient.getAllTemplates(templateType));
+    }
+
+    public CompletableFuture<TemplatePreview> generateTemplatePreviewAsync(String templateId, Map<String, Object> personalisation) {
+        return submit(retryPolicy, () -> attemptClient.generateTemplatePreview(templateId, personalisation));
+    }
+
+    public CompletableFuture<ReceivedTextMessageList> getReceivedTextMessagesAsync(String olderThanId) {
+        return submit(retryPolicy, () -> attemptClient.getReceivedTextMessages(olderThanId));
+    }
+
+    private <T> CompletableFuture<T> submit(final RetryPolicy policy, final ClientCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable start = () -> {
+            policy.recordRequest();
+            attempt(policy, call, 1, future);
+        };
+        if (inFlight.tryAcquire()) {
+            start.run();
+        } else {
+            queued.add(start);
+            // a request may have completed between the tryAcquire and the add, and found nothing queued
+            startQueued();
+        }
+        return future;
+    }
+
+    private void startQueued() {
+        while (!queued.isEmpty() && inFlight.tryAcquire()) {
+            Runnable next = queued.poll();
+            if (next == null) {
+                // another thread started it, so give the place back and look again
+                inFlight.release();
+            } else {
+                next.run();
+            }
+        }
+    }
+
+    private void release() {
+        inFlight.release();
+        startQueued();
+    }
+
+    private <T> void attempt(final RetryPolicy policy, final ClientCall<T> call, final int attempt, final CompletableFuture<T> future) {
+        try {
+            executor.execute(() -> {
+                T result;
+                try {
+                    result = call.call();
+                } catch (NotificationClientException e) {
+                    long delayMillis = policy.retryDelayMillis(attempt, e);
+                    if (delayMillis < 0) {
+                        policy.getListener().onComplete(attempt, e);
+                        fail(future, e);
+                    } else {
+                        policy.getListener().onRetry(attempt, e, delayMillis);
+                        scheduleRetry(policy, call, attempt + 1, future, delayMillis);
+                    }
+                    return;
+                } catch (Throwable e) {
+                    fail(future, e);
+                    return;
+                }
+                policy.getListener().onComplete(attempt, null);
+                release();
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException e) {
+            fail(future, e);
+        }
+    }
+
+    private <T> void scheduleRetry(final RetryPolicy policy, final ClientCall<T> call, final int attempt, final CompletableFuture<T> future, final long delayMillis) {
+        try {
+            scheduler.schedule(() -> attempt(policy, call, attempt, future), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            fail(future, e);
+        }
+    }
+
+    private void fail(final CompletableFuture<?> future, final Throwable e) {
+        release();
+        future.completeExceptionally(e);
+    }
+
+    private interface ClientCall<T> {
+        T call() throws NotificationClientException;
+    }
+
+    /**
+     * Reads a caller's stream once so that every attempt at sending it sees the whole document.
+     */
+    private static final class ReplayableStream {
+        private final InputStream stream;
+        private byte[] contents;
+
+        private ReplayableStream(final InputStream stream) {
+            this.stream = stream;
+        }
+
+        synchronized InputStream open() throws NotificationClientException {
+            if (contents == null) {
+                try {
+                    contents = IOUtils.toByteArray(stream);
+                } catch (IOException e) {
+                    throw new NotificationClientException(e);
+                }
+            }
+            return new ByteArrayInputStream(contents);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package uk.gov.service.notify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Base64 encodes a stream of known length straight to a connection, a fixed-size chunk at a time.
+ */
+final class Base64Writer {
+
+    // a multiple of 3, so every chunk but the last encodes without padding
+    private static final int CHUNK_SIZE = 3 * 8 * 1024;
+
+    private Base64Writer() {
+    }
+
+    /**
+     * @return the number of characters that <code>size</code> bytes encode to, with padding
+     */
+    static long encodedLength(final long size) {
+        return (size + 2) / 3 * 4;
+    }
+
+    /**
+     * Writes exactly {@link #encodedLength(long)} characters for <code>size</code> bytes of the stream.
+     *
+     * @param source names the stream in the error if it is not <code>size</code> bytes long
+     * @throws IOException if the stream could not be read or is longer or shorter than <code>size</code>
+     */
+    static void write(final InputStream in, final long size, final OutputStream out, final Object source) throws IOException {
+        Base64.Encoder encoder = Base64.getEncoder();
+        byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, size)];
+        byte[] encoded = new byte[(int) encodedLength(chunk.length)];
+        long remaining = size;
+        while (remaining > 0) {
+            int length = (int) Math.min(CHUNK_SIZE, remaining);
+            readFully(in, chunk, length, source);
+            if (length == chunk.length) {
+                out.write(encoded, 0, encoder.encode(chunk, encoded));
+            } else {
+                out.write(encoder.encode(Arrays.copyOf(chunk, length)));
+            }
+            remaining -= length;
+        }
+        if (in.read() != -1) {
+            throw new IOException(source + " grew while it was being sent");
+        }
+    }
+
+    private static void readFully(final InputStream in, final byte[] buffer, final int length, final Object source) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new IOException(source + " shrank while it was being sent");
+            }
+            read += n;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package uk.gov.service.notify;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reuses a signed JWT bearer token for a number of seconds instead of signing a new one for every request.
+ * Tokens are signed with <code>Hs256TokenSigner</code>.
+ * <p>
+ * Notify accepts a token whose <code>iat</code> claim is within 30 seconds of the time it receives the request,
+ * so a token can safely be reused for a short while. Once three quarters of the reuse period has passed, one
+ * caller signs a replacement while the others carry on with the current token, so senders do not all stall on
+ * signing at the moment the token runs out. No locks are taken: if several callers find the token expired at
+ * the same time they each sign one and the last one wins.
+ */
+public class BearerTokenCache {
+
+    /**
+     * The longest a token may be reused for. This leaves a margin inside Notify's 30 second window
+     * for clock skew and request latency.
+     */
+    public static final int MAX_REUSE_SECONDS = 25;
+
+    private final Hs256TokenSigner signer;
+    private final long reuseMillis;
+    private final long refreshAfterMillis;
+    private final Clock clock;
+    private final AtomicReference<SignedToken> current = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * @param issuer       the service id, used as the <code>iss</code> claim
+     * @param secret       the API key the token is signed with
+     * @param reuseSeconds how long a token is reused for, between 0 and {@link #MAX_REUSE_SECONDS}.
+     *                     0 signs a new token for every request.
+     */
+    public BearerTokenCache(String issuer, String secret, int reuseSeconds) {
+        this(issuer, secret, reuseSeconds, Clock.systemUTC());
+    }
+
+    BearerTokenCache(String issuer, String secret, int reuseSeconds, Clock clock) {
+        if (reuseSeconds < 0 || reuseSeconds > MAX_REUSE_SECONDS) {
+            throw new IllegalArgumentException("reuseSeconds must be between 0 and " + MAX_REUSE_SECONDS);
+        }
+        this.signer = new Hs256TokenSigner(issuer, secret);
+        this.reuseMillis = TimeUnit.SECONDS.toMillis(reuseSeconds);
+        this.refreshAfterMillis = reuseMillis * 3 / 4;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a signed token that Notify will accept
+     */
+    public String getToken() {
+        long now = clock.millis();
+        if (reuseMillis == 0) {
+            return signer.sign(TimeUnit.MILLISECONDS.toSeconds(now));
+        }
+
+        SignedToken token = current.get();
+        if (token != null) {
+            long age = now - token.signedAtMillis;
+            if (age >= 0 && age < refreshAfterMillis) {
+                return token.value;
+            }
+            if (age >= 0 && age < reuseMillis) {
+                // nearly expired: let one caller sign the replacement, everyone else keeps using this one
+                if (!refreshing.compareAndSet(false, true)) {
+                    return token.value;
+                }
+                try {
+                    return sign(token, now);
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        }
+        return sign(token, now);
+    }
+
+    private String sign(SignedToken previous, long now) {
+        SignedToken signed = new SignedToken(signer.sign(TimeUnit.MILLISECONDS.toSeconds(now)), now);
+        current.compareAndSet(previous, signed);
+        return signed.value;
+    }
+
+    private static final class SignedToken {
+        private final String value;
+        private final long signedAtMillis;
+
+        private SignedToken(String value, long signedAtMillis) {
+            this.value = value;
+            this.signedAtMillis = signedAtMillis;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package uk.gov.service.notify;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Sends a large number of emails, text messages or letters through an <code>AsyncNotificationClient</code>, keeping
+ * a fixed number of requests in flight.
+ * <p>
+ * Requests are taken from the <code>Iterator</code> or <code>Stream</code> only as fast as earlier ones complete, so
+ * the producer is held back rather than every request being queued in memory. Requests go through the async client
+ * and so share its <code>NotificationClient</code>'s transport, bearer tokens, rate limiter and retry policies.
+ * <p>
+ * Each request's outcome is passed to the callback as a <code>Result</code>, either in the order the requests were
+ * produced or as they complete. The callback is never called by two threads at once. In order, a slow request holds
+ * back the results behind it, and those results keep their place in the in-flight limit until they are delivered.
+ * <p>
+ * <pre>
+ * BulkSender sender = new BulkSender(new AsyncNotificationClient(client, executor, 32));
+ * BulkSender.Summary summary = sender.send(
+ *         recipients.stream().map(r -&gt; BulkSender.Request.sms(templateId, r.getPhoneNumber(), r.getPersonalisation(), r.getId())),
+ *         result -&gt; { if (!result.isSuccess()) failures.add(result); });
+ * </pre>
+ */
+public class BulkSender {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkSender.class.getName());
+
+    private final AsyncNotificationClient client;
+    private final int maxInFlight;
+
+    /**
+     * @param client sends the requests. At most its <code>maxInFlight</code> requests are outstanding at once.
+     */
+    public BulkSender(final AsyncNotificationClient client) {
+        this(client, client.getMaxInFlight());
+    }
+
+    /**
+     * @param client      sends the requests
+     * @param maxInFlight the maximum number of requests outstanding at once, which is capped by the client's own limit
+     */
+    public BulkSender(final AsyncNotificationClient client, final int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.client = client;
+        this.maxInFlight = Math.min(maxInFlight, client.getMaxInFlight());
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sends every request and passes each result to the callback as soon as it completes.
+     *
+     * @return once every result has been passed to the callback
+     */
+    public <R> Summary send(Stream<? extends Request<? extends R>> requests, Consumer<? super Result<R>> callback) {
+        return send(requests.iterator(), callback, false);
+    }
+
+    public <R> Summary send(Iterator<? extends Request<? extends R>> requests, Consumer<? super Result<R>> callback) {
+        return send(requests, callback, false);
+    }
+
+    /**
+     * Sends every request and passes the results to the callback in the order the requests were produced.
+     *
+     * @return once every result has been passed to the callback
+     */
+    public <R> Summary sendInOrder(Stream<? extends Request<? extends R>> requests, Consumer<? super Result<R>> callback) {
+        return send(requests.iterator(), callback, true);
+    }
+
+    public <R> Summary sendInOrder(Iterator<? extends Request<? extends R>> requests, Consumer<? super Result<R>> callback) {
+        return send(requests, callback, true);
+    }
+
+    private <R> Summary send(Iterator<? extends Request<? extends R>> requests, Consumer<? super Result<R>> callback, boolean ordered) {
+        Run<R> run = new Run<>(callback, ordered);
+        long started = System.nanoTime();
+        try {
+            while (requests.hasNext()) {
+                Request<? extends R> request = requests.next();
+                run.window.acquireUninterruptibly();
+                long index = run.submitted++;
+                long submitted = System.nanoTime();
+                CompletableFuture<? extends R> future;
+                try {
+                    future = request.send.apply(client);
+                } catch (RuntimeException e) {
+                    future = failed(e);
+                }
+                future.whenComplete((response, failure) ->
+                        run.complete(new Result<>(index, request, response, unwrap(failure)), System.nanoTime() - submitted));
+            }
+        } finally {
+            // Wait for every outstanding result to be delivered, even if the producer failed part way through
+            run.window.acquireUninterruptibly(maxInFlight);
+            run.window.release(maxInFlight);
+        }
+        return new Summary(run.submitted, run.succeeded, run.submitted - run.succeeded, System.nanoTime() - started, run.latency);
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    /**
+     * The state of one call to <code>send</code>.
+     */
+    private final class Run<R> {
+        private final Semaphore window = new Semaphore(maxInFlight);
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Consumer<? super Result<R>> callback;
+        private final boolean ordered;
+        // Results that completed ahead of an earlier request, when delivering in order
+        private final Map<Long, Result<R>> pending = new HashMap<>();
+        private long nextToDeliver;
+        private long submitted;
+        private long succeeded;
+
+        private Run(final Consumer<? super Result<R>> callback, final boolean ordered) {
+            this.callback = callback;
+            this.ordered = ordered;
+        }
+
+        private synchronized void complete(Result<R> result, long latencyNanos) {
+            latency.record(latencyNanos);
+            if (!ordered) {
+                deliver(result);
+                return;
+            }
+            pending.put(result.getIndex(), result);
+            Result<R> next;
+            while ((next = pending.remove(nextToDeliver)) != null) {
+                nextToDeliver++;
+                deliver(next);
+            }
+        }
+
+        private void deliver(Result<R> result) {
+            if (result.isSuccess()) {
+                succeeded++;
+            }
+            try {
+                callback.accept(result);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Bulk send callback failed for request " + result.getIndex(), e);
+            } finally {
+                window.release();
+            }
+        }
+    }
+
+    /**
+     * One email, text message or letter to send.
+     *
+     * @param <R> the type of response Notify returns for it
+     */
+    public static final class Request<R> {
+        private final Function<AsyncNotificationClient, CompletableFuture<R>> send;
+        private final String reference;
+
+        private Request(final Function<AsyncNotificationClient, CompletableFuture<R>> send, final String reference) {
+            this.send = send;
+            this.reference = reference;
+        }
+
+        public static Request<SendEmailResponse> email(String templateId, String emailAddress, Map<String, ?> personalisation, String reference) {
+            return new Request<>(client -> client.sendEmailAsync(templateId, emailAddress, personalisation, reference), reference);
+        }
+
+        public static Request<SendEmailResponse> email(String templateId, String emailAddress, Map<String, ?> personalisation, String reference, String emailReplyToId) {
+            return new Request<>(client -> client.sendEmailAsync(templateId, emailAddress, personalisation, reference, emailReplyToId), reference);
+        }
+
+        public static Request<SendEmailResponse> email(String templateId, String emailAddress, Map<String, ?> personalisation, String reference, String emailReplyToId, URI oneClickUnsubscribeURL) {
+            return new Request<>(client -> client.sendEmailAsync(templateId, emailAddress, personalisation, reference, emailReplyToId, oneClickUnsubscribeURL), reference);
+        }
+
+        public static Request<SendSmsResponse> sms(String templateId, String phoneNumber, Map<String, ?> personalisation, String reference) {
+            return new Request<>(client -> client.sendSmsAsync(templateId, phoneNumber, personalisation, reference), reference);
+        }
+
+        public static Request<SendSmsResponse> sms(String templateId, String phoneNumber, Map<String, ?> personalisation, String reference, String smsSenderId) {
+            return new Request<>(client -> client.sendSmsAsync(templateId, phoneNumber, personalisation, reference, smsSenderId), reference);
+        }
+
+        public static Request<SendLetterResponse> letter(String templateId, Map<String, ?> personalisation, String reference) {
+            return new Request<>(client -> client.sendLetterAsync(templateId, personalisation, reference), reference);
+        }
+
+        /**
+         * @return the reference given for the notification, which may be null
+         */
+        public String getReference() {
+            return reference;
+        }
+    }
+
+    /**
+     * The outcome of one request: either the response from Notify or the exception that the send failed with.
+     */
+    public static final class Result<R> {
+        private final long index;
+        private final Request<? extends R> request;
+        private final R response;
+        private final Throwable exception;
+
+        Result(final long index, final Request<? extends R> request, final R response, final Throwable exception) {
+            this.index = index;
+            this.request = request;
+            this.response = response;
+            this.exception = exception;
+        }
+
+        /**
+         * @return the position of the request in the stream, starting at 0
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public Request<? extends R> getRequest() {
+            return request;
+        }
+
+        public boolean isSuccess() {
+            return exception == null;
+        }
+
+        /**
+         * @return the response from Notify, or null if the send failed
+         */
+        public R getResponse() {
+            return response;
+        }
+
+        /**
+         * @return usually a <code>NotificationClientException</code>, or null if the send succeeded
+         */
+        public Throwable getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "index=" + index +
+                    ", reference=" + request.getReference() +
+                    (exception == null ? ", response=" + response : ", exception=" + exception) +
+                    '}';
+        }
+    }
+
+    /**
+     * Counts and timings for a completed bulk send.
+     */
+    public static final class Summary {
+        private final long requestCount;
+        private final long successCount;
+        private final long failureCount;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+
+        Summary(final long requestCount, final long successCount, final long failureCount, final long elapsedNanos, final LatencyHistogram latency) {
+            this.requestCount = requestCount;
+            this.successCount = successCount;
+            this.failureCount = failureCount;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getSuccessCount() {
+            return successCount;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the number of requests completed per second over the whole send
+         */
+        public double getRequestsPerSecond() {
+            return elapsedNanos == 0 ? 0 : requestCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * @return the time from submitting each request until it completed, including any retries
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{" +
+                    "requestCount=" + requestCount +
+                    ", successCount=" + successCount +
+                    ", failureCount=" + failureCount +
+                    ", elapsedMillis=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) +
+                    ", requestsPerSecond=" + String.format("%.1f", getRequestsPerSecond()) +
+                    ", p99LatencyMillis=" + TimeUnit.NANOSECONDS.toMillis(latency.getValueAtPercentile(99)) +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package uk.gov.service.notify;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names the client's background threads and makes them daemons, so they never keep an application from exiting.
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    DaemonThreadFactory(final String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    /**
+     * @return a pool of at most <code>threads</code> daemon threads, which queues tasks beyond that and lets its
+     * threads go after a minute idle, for the client's default background work
+     */
+    static ExecutorService newPool(final String namePrefix, final int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), new DaemonThreadFactory(namePrefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,172 @@
+package uk.gov.service.notify;
+
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * A document to upload via sendEmail, to be added to the personalisation map like the <code>JSONObject</code> from
+ * <code>prepareUpload</code>.
+ * <p>
+ * Only a reference to the document is kept. It is read and base64 encoded as the request is written to the
+ * connection, a chunk at a time, so an upload waiting to be sent holds no encoded copy of the document. The
+ * document is read again if the request is retried, so a file or stream source must give the same content each
+ * time it is opened.
+ * <p>
+ * If it is put in a <code>JSONObject</code> instead, it is encoded in full when that object is serialised.
+ */
+public final class DocumentUpload implements JSONString {
+
+    /**
+     * The largest document Notify accepts, 2MB.
+     */
+    public static final long MAX_SIZE = 2 * 1024 * 1024;
+
+    private final Source source;
+    private final long size;
+    private final Object description;
+    private String filename;
+    private Boolean confirmEmailBeforeDownload;
+    private String retentionPeriod;
+
+    private DocumentUpload(final Source source, final long size, final Object description) throws NotificationClientException {
+        if (size > MAX_SIZE) {
+            throw new NotificationClientException(413, "File is larger than 2MB");
+        }
+        this.source = source;
+        this.size = size;
+        this.description = description;
+    }
+
+    /**
+     * @param documentContents the document, which is not copied so must not be changed before it is sent
+     * @throws NotificationClientException with status code 413 if the document is larger than 2MB
+     */
+    public static DocumentUpload of(final byte[] documentContents) throws NotificationClientException {
+        return new DocumentUpload(() -> new ByteArrayInputStream(documentContents), documentContents.length, "document");
+    }
+
+    /**
+     * @param document a file that is read when the email is sent
+     * @throws NotificationClientException with status code 413 if the file is larger than 2MB, or if it cannot be read
+     */
+    public static DocumentUpload of(final Path document) throws NotificationClientException {
+        long size;
+        try {
+            size = Files.size(document);
+        } catch (IOException e) {
+            NotificationClientException cannotRead = new NotificationClientException("Can't read file");
+            cannotRead.initCause(e);
+            throw cannotRead;
+        }
+        return new DocumentUpload(() -> Files.newInputStream(document), size, document);
+    }
+
+    /**
+     * @param source opens the document each time the request is written, and must give <code>size</code> bytes
+     * @param size   the length of the document in bytes
+     * @throws NotificationClientException with status code 413 if the document is larger than 2MB
+     */
+    public static DocumentUpload of(final Source source, final long size) throws NotificationClientException {
+        return new DocumentUpload(source, size, "document");
+    }
+
+    /**
+     * @param filename the filename of the document upon download
+     */
+    public DocumentUpload filename(final String filename) {
+        this.filename = filename;
+        return this;
+    }
+
+    /**
+     * @param confirmEmailBeforeDownload true to require the user to enter their email address before accessing the file
+     */
+    public DocumentUpload confirmEmailBeforeDownload(final boolean confirmEmailBeforeDownload) {
+        this.confirmEmailBeforeDownload = confirmEmailBeforeDownload;
+        return this;
+    }
+
+    /**
+     * @param retentionPeriod how long the document should be available to the user
+     */
+    public DocumentUpload retentionPeriod(final RetentionPeriodDuration retentionPeriod) {
+        this.retentionPeriod = retentionPeriod != null ? retentionPeriod.toString() : null;
+        return this;
+    }
+
+    /**
+     * @return the length of the document in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    Boolean getConfirmEmailBeforeDownload() {
+        return confirmEmailBeforeDownload;
+    }
+
+    String getRetentionPeriod() {
+        return retentionPeriod;
+    }
+
+    long encodedLength() {
+        return Base64Writer.encodedLength(size);
+    }
+
+    /**
+     * Writes the base64 encoded document, without quotes.
+     */
+    void writeEncodedTo(final OutputStream out) throws IOException {
+        try (InputStream in = source.open()) {
+            Base64Writer.write(in, size, out, description);
+        }
+    }
+
+    @Override
+    public String toJSONString() {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream((int) encodedLength());
+        try {
+            writeEncodedTo(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        JSONObject jsonFileObject = new JSONObject();
+        jsonFileObject.put("file", new String(encoded.toByteArray(), ISO_8859_1));
+        jsonFileObject.put("filename", filename != null ? filename : JSONObject.NULL);
+        jsonFileObject.put("confirm_email_before_download", confirmEmailBeforeDownload != null ? confirmEmailBeforeDownload : JSONObject.NULL);
+        jsonFileObject.put("retention_period", retentionPeriod != null ? retentionPeriod : JSONObject.NULL);
+        return jsonFileObject.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentUpload{" +
+                "source=" + description +
+                ", size=" + size +
+                ", filename=" + filename +
+                '}';
+    }
+
+    /**
+     * Opens the document to be read.
+     */
+    @FunctionalInterface
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+}
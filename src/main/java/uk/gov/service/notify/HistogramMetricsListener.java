@@ -0,0 +1,113 @@
+package uk.gov.service.notify;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A <code>MetricsListener</code> that keeps a <code>LatencyHistogram</code> and counters for each endpoint, so you
+ * can read percentiles and error rates without a metrics library. For example:
+ * <pre>
+ * HistogramMetricsListener metrics = new HistogramMetricsListener();
+ * NotificationClient client = NotificationClient.builder(apiKey).metricsListener(metrics).build();
+ * ...
+ * long p99 = metrics.getEndpoint("/v2/notifications/email").getLatency().getValueAtPercentile(99);
+ * </pre>
+ */
+public class HistogramMetricsListener implements MetricsListener {
+
+    private final ConcurrentHashMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public void onRequest(RequestMetrics metrics) {
+        EndpointMetrics endpoint = endpoints.get(metrics.getEndpoint());
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(metrics.getEndpoint(), key -> new EndpointMetrics());
+        }
+        endpoint.record(metrics);
+    }
+
+    /**
+     * @return the endpoints that have been requested so far
+     */
+    public Set<String> getEndpoints() {
+        return Collections.unmodifiableSet(endpoints.keySet());
+    }
+
+    /**
+     * @param endpoint for example <code>/v2/notifications/email</code> or <code>/v2/template/{id}</code>
+     * @return the metrics for that endpoint, empty if it has not been requested
+     */
+    public EndpointMetrics getEndpoint(String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        return metrics != null ? metrics : new EndpointMetrics();
+    }
+
+    public static final class EndpointMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final ConcurrentHashMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+        private EndpointMetrics() {
+        }
+
+        private void record(RequestMetrics metrics) {
+            latency.record(metrics.getLatencyNanos());
+            queueWait.record(metrics.getQueueWaitNanos());
+            if (!metrics.isSuccess()) {
+                errors.increment();
+            }
+            if (metrics.getBytesSent() > 0) {
+                bytesSent.add(metrics.getBytesSent());
+            }
+            bytesReceived.add(metrics.getBytesReceived());
+            LongAdder status = statusCodes.get(metrics.getStatusCode());
+            if (status == null) {
+                status = statusCodes.computeIfAbsent(metrics.getStatusCode(), key -> new LongAdder());
+            }
+            status.increment();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+
+        public long getRequestCount() {
+            return latency.getCount();
+        }
+
+        /**
+         * @return the number of requests that got no response or a status code other than 2xx
+         */
+        public long getErrorCount() {
+            return errors.sum();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        /**
+         * @return the number of responses with each status code, with 0 for requests that got no response
+         */
+        public Map<Integer, Long> getStatusCodeCounts() {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statusCodes.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package uk.gov.service.notify;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Signs the two-claim HS256 bearer tokens Notify expects without going through jose4j.
+ * <p>
+ * The output is byte for byte what <code>Authentication.create</code> produces for the same issuer, secret and
+ * <code>iat</code>: the header is encoded once up front, the <code>iss</code> claim is escaped and encoded once
+ * per signer, and each thread keeps its own <code>Mac</code> (initialised once with the key) and a reusable
+ * buffer that the payload, signing input and signature are written into. Signing a token allocates only the
+ * returned <code>String</code>.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class Hs256TokenSigner {
+
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final int MIN_KEY_LENGTH_BYTES = 32;
+    private static final int SIGNATURE_LENGTH_BYTES = 32;
+    private static final int MAX_IAT_DIGITS = 20;
+    private static final byte[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(US_ASCII);
+    // base64url({"alg":"HS256","typ":"JWT"}) followed by the separator, exactly as jose4j writes it
+    private static final byte[] ENCODED_HEADER = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.".getBytes(US_ASCII);
+
+    private final SecretKeySpec key;
+    private final boolean keyTooShort;
+    private final byte[] claimsPrefix;
+    private final int encodedPrefixSourceLength;
+    private final byte[] encodedPrefix;
+    private final int bufferLength;
+    private final ThreadLocal<Mac> macs;
+    private final ThreadLocal<byte[]> buffers;
+
+    /**
+     * @param issuer the service id, used as the <code>iss</code> claim
+     * @param secret the API key the token is signed with
+     */
+    public Hs256TokenSigner(String issuer, String secret) {
+        byte[] keyBytes = secret.getBytes(UTF_8);
+        this.keyTooShort = keyBytes.length < MIN_KEY_LENGTH_BYTES;
+        this.key = keyTooShort ? null : new SecretKeySpec(keyBytes, HMAC_SHA256);
+        this.claimsPrefix = ("{\"iss\":\"" + escape(issuer) + "\",\"iat\":").getBytes(UTF_8);
+
+        // the whole 3-byte groups of the claims prefix encode to the same characters in every token
+        this.encodedPrefixSourceLength = claimsPrefix.length / 3 * 3;
+        this.encodedPrefix = new byte[encodedPrefixSourceLength / 3 * 4];
+        encode(claimsPrefix, 0, encodedPrefixSourceLength, encodedPrefix, 0);
+
+        int maxClaimsLength = claimsPrefix.length + MAX_IAT_DIGITS + 1;
+        this.bufferLength = maxClaimsLength                       // raw claims
+                + ENCODED_HEADER.length + encodedLength(maxClaimsLength) // signing input
+                + 1 + encodedLength(SIGNATURE_LENGTH_BYTES)            // separator and signature
+                + SIGNATURE_LENGTH_BYTES;                              // raw signature
+
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.buffers = ThreadLocal.withInitial(() -> new byte[bufferLength]);
+    }
+
+    /**
+     * @return a token issued now
+     */
+    public String sign() {
+        return sign(System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * @param issuedAtSeconds the <code>iat</code> claim, in seconds since the epoch
+     * @return the compact serialization of the signed token
+     */
+    public String sign(long issuedAtSeconds) {
+        if (keyTooShort) {
+            // jose4j refuses to sign with such a key too, but only when a token is created
+            throw new IllegalArgumentException("A key of at least 256 bits must be used with HS256");
+        }
+        byte[] buffer = buffers.get();
+
+        // raw claims: {"iss":"...","iat":<seconds>}
+        System.arraycopy(claimsPrefix, 0, buffer, 0, claimsPrefix.length);
+        int claimsLength = writeDigits(issuedAtSeconds, buffer, claimsPrefix.length);
+        buffer[claimsLength++] = '}';
+
+        // signing input: header.claims
+        int position = claimsLength;
+        int signingInputStart = position;
+        System.arraycopy(ENCODED_HEADER, 0, buffer, position, ENCODED_HEADER.length);
+        position += ENCODED_HEADER.length;
+        System.arraycopy(encodedPrefix, 0, buffer, position, encodedPrefix.length);
+        position += encodedPrefix.length;
+        position = encode(buffer, encodedPrefixSourceLength, claimsLength - encodedPrefixSourceLength, buffer, position);
+        int signingInputLength = position - signingInputStart;
+
+        int signatureStart = bufferLength - SIGNATURE_LENGTH_BYTES;
+        Mac mac = macs.get();
+        mac.update(buffer, signingInputStart, signingInputLength);
+        try {
+            mac.doFinal(buffer, signatureStart);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+
+        buffer[position++] = '.';
+        position = encode(buffer, signatureStart, SIGNATURE_LENGTH_BYTES, buffer, position);
+
+        return new String(buffer, signingInputStart, position - signingInputStart, US_ASCII);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_SHA256);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int writeDigits(long value, byte[] buffer, int position) {
+        if (value < 0) {
+            byte[] digits = Long.toString(value).getBytes(US_ASCII);
+            System.arraycopy(digits, 0, buffer, position, digits.length);
+            return position + digits.length;
+        }
+        int length = 1;
+        for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+            length++;
+        }
+        int end = position + length;
+        long remaining = value;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return end;
+    }
+
+    private static int encodedLength(int length) {
+        return (length * 4 + 2) / 3;
+    }
+
+    /**
+     * Unpadded base64url. The source and destination may be the same array as long as the
+     * destination range starts after the source range.
+     */
+    private static int encode(byte[] src, int offset, int length, byte[] dst, int position) {
+        int end = offset + length;
+        int i = offset;
+        while (end - i >= 3) {
+            int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+            dst[position++] = BASE64URL[(bits >>> 18) & 0x3f];
+            dst[position++] = BASE64URL[(bits >>> 12) & 0x3f];
+            dst[position++] = BASE64URL[(bits >>> 6) & 0x3f];
+            dst[position++] = BASE64URL[bits & 0x3f];
+        }
+        if (end - i == 1) {
+            int bits = (src[i] & 0xff) << 16;
+            dst[position++] = BASE64URL[(bits >>> 18) & 0x3f];
+            dst[position++] = BASE64URL[(bits >>> 12) & 0x3f];
+        } else if (end - i == 2) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+            dst[position++] = BASE64URL[(bits >>> 18) & 0x3f];
+            dst[position++] = BASE64URL[(bits >>> 12) & 0x3f];
+            dst[position++] = BASE64URL[(bits >>> 6) & 0x3f];
+        }
+        return position;
+    }
+
+    /**
+     * Escapes a string the same way jose4j's JSON writer does.
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    escaped.append("\\\"");
+                    break;
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '/':
+                    escaped.append("\\/");
+                    break;
+                case '\b':
+                    escaped.append("\\b");
+                    break;
+                case '\f':
+                    escaped.append("\\f");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                default:
+                    if (ch <= '\u001F' || (ch >= '\u007F' && ch <= '\u009F') || (ch >= '\u2000' && ch <= '\u20FF')) {
+                        String hex = Integer.toHexString(ch).toUpperCase();
+                        escaped.append("\\u");
+                        for (int k = hex.length(); k < 4; k++) {
+                            escaped.append('0');
+                        }
+                        escaped.append(hex);
+                    } else {
+                        escaped.append(ch);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package uk.gov.service.notify;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The HTTP stack used by <code>NotificationClient</code> to talk to the Notify API.
+ * <p>
+ * Every request the client makes goes through {@link #execute(HttpTransportRequest)}, so the
+ * same transport (and whatever connection pool it holds) can be shared by several clients.
+ * Implementations must be safe to use from multiple threads.
+ *
+ * @see HttpUrlConnectionTransport
+ * @see ApacheHttpClientTransport
+ */
+public interface HttpTransport extends Closeable {
+
+    /**
+     * Sends the request and returns once the status line and headers have been received.
+     * The caller must close the returned response so that the underlying connection can be reused.
+     *
+     * @param request the request to send
+     * @return <code>HttpTransportResponse</code> whose body has not been read yet
+     * @throws IOException if the request could not be sent or no response was received. A
+     *                     <code>java.net.ConnectException</code> means no connection could be made, so the request
+     *                     was never sent and is safe to retry even if it sends a notification.
+     */
+    HttpTransportResponse execute(HttpTransportRequest request) throws IOException;
+
+    /**
+     * Releases any pooled connections held by the transport. The default does nothing.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,46 @@
+package uk.gov.service.notify;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class HttpTransportRequest {
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private final RequestBody body;
+
+    public HttpTransportRequest(String method, String url, Map<String, String> headers, RequestBody body) {
+        this.method = method;
+        this.url = url;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        this.body = body;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the request body, or null for requests without one such as GET
+     */
+    public RequestBody getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpTransportRequest{" +
+                "method='" + method + '\'' +
+                ", url='" + url + '\'' +
+                '}';
+    }
+}
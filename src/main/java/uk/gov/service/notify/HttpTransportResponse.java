@@ -0,0 +1,97 @@
+package uk.gov.service.notify;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.UnaryOperator;
+
+/**
+ * A response received by a <code>HttpTransport</code>.
+ * <p>
+ * Closing the response drains whatever is left of the body so the connection goes back to the
+ * transport's pool rather than being thrown away.
+ */
+public final class HttpTransportResponse implements Closeable {
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    private final int statusCode;
+    private final InputStream body;
+    private final Closeable connection;
+    private final long connectNanos;
+    private final UnaryOperator<String> headers;
+
+    /**
+     * @param statusCode the HTTP status code
+     * @param body       the response body, or null if the response has none
+     * @param connection released once the body has been drained, or null if there is nothing to release
+     */
+    public HttpTransportResponse(int statusCode, InputStream body, Closeable connection) {
+        this(statusCode, body, connection, -1);
+    }
+
+    /**
+     * @param statusCode   the HTTP status code
+     * @param body         the response body, or null if the response has none
+     * @param connection   released once the body has been drained, or null if there is nothing to release
+     * @param connectNanos how long it took to get a connection to send the request on, or -1 if not known
+     */
+    public HttpTransportResponse(int statusCode, InputStream body, Closeable connection, long connectNanos) {
+        this(statusCode, body, connection, connectNanos, name -> null);
+    }
+
+    /**
+     * @param statusCode   the HTTP status code
+     * @param body         the response body, or null if the response has none
+     * @param connection   released once the body has been drained, or null if there is nothing to release
+     * @param connectNanos how long it took to get a connection to send the request on, or -1 if not known
+     * @param headers      looks up the value of a response header by name, ignoring case, or gives null if the
+     *                     response does not have it
+     */
+    public HttpTransportResponse(int statusCode, InputStream body, Closeable connection, long connectNanos, UnaryOperator<String> headers) {
+        this.statusCode = statusCode;
+        this.body = body != null ? body : new ByteArrayInputStream(new byte[0]);
+        this.connection = connection;
+        this.connectNanos = connectNanos;
+        this.headers = headers;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * @return how long it took to get a connection to send the request on, close to zero when a kept-alive
+     * connection was reused, or -1 if the transport does not measure it
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * @param name the header name, in any case
+     * @return the header's value, or null if the response does not have it or the transport does not report headers
+     */
+    public String getHeader(String name) {
+        return headers.apply(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            while (body.read(buffer) != -1) {
+                // discard the rest of the body so the connection can be reused
+            }
+            body.close();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package uk.gov.service.notify;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The default <code>HttpTransport</code>, built on <code>HttpURLConnection</code>.
+ * <p>
+ * Connections are not disconnected after each request; once a response has been read and closed the socket
+ * goes back to the JDK keep-alive cache. The size of that cache is controlled by the JVM-wide
+ * <code>http.keepAlive</code> and <code>http.maxConnections</code> system properties. Use
+ * <code>ApacheHttpClientTransport</code> if you need a pool configured per client.
+ * <p>
+ * A custom <code>SSLContext</code> is applied to each connection this transport opens, never to
+ * <code>HttpsURLConnection</code>'s JVM-wide default. Transports given the same context share one socket factory,
+ * so they can reuse each other's kept-alive connections, as well as the context's TLS session cache.
+ */
+public class HttpUrlConnectionTransport implements HttpTransport {
+
+    // HttpsURLConnection only reuses a kept-alive connection opened with the same factory instance,
+    // and SSLContext.getSocketFactory() returns a new one on every call
+    private static final Map<SSLContext, SSLSocketFactory> SOCKET_FACTORIES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Proxy proxy;
+    private final SSLSocketFactory sslSocketFactory;
+
+    public HttpUrlConnectionTransport() {
+        this(null);
+    }
+
+    /**
+     * @param proxy Proxy used on the http requests, or null to connect directly
+     */
+    public HttpUrlConnectionTransport(final Proxy proxy) {
+        this(proxy, null);
+    }
+
+    /**
+     * @param proxy      Proxy used on the http requests, or null to connect directly
+     * @param sslContext the SSL context for HTTPS connections, for example one holding a client certificate,
+     *                   or null to use the JVM's default
+     */
+    public HttpUrlConnectionTransport(final Proxy proxy, final SSLContext sslContext) {
+        this.proxy = proxy;
+        this.sslSocketFactory = sslContext == null ? null : SOCKET_FACTORIES.computeIfAbsent(sslContext, SSLContext::getSocketFactory);
+    }
+
+    public Proxy getProxy() {
+        return proxy;
+    }
+
+    /**
+     * @return the socket factory used for HTTPS connections, or null if the JVM's default is used
+     */
+    public SSLSocketFactory getSslSocketFactory() {
+        return sslSocketFactory;
+    }
+
+    @Override
+    public HttpTransportResponse execute(HttpTransportRequest request) throws IOException {
+        HttpURLConnection conn = getConnection(new URL(request.getUrl()));
+        try {
+            conn.setRequestMethod(request.getMethod());
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            RequestBody body = request.getBody();
+            if (body != null) {
+                conn.setDoOutput(true);
+                long contentLength = body.contentLength();
+                if (contentLength >= 0) {
+                    conn.setFixedLengthStreamingMode(contentLength);
+                }
+            }
+
+            long connectStarted = System.nanoTime();
+            try {
+                conn.connect();
+            } catch (UnknownHostException | NoRouteToHostException | SocketTimeoutException e) {
+                // nothing has been sent yet, so report it as a failure to connect, which is safe to retry
+                ConnectException connectFailed = new ConnectException(e.toString());
+                connectFailed.initCause(e);
+                throw connectFailed;
+            }
+            long connectNanos = System.nanoTime() - connectStarted;
+
+            if (body != null) {
+                try (OutputStream out = conn.getOutputStream()) {
+                    body.writeTo(out);
+                }
+            }
+
+            int httpResult = conn.getResponseCode();
+            InputStream responseBody = httpResult >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? conn.getErrorStream()
+                    : conn.getInputStream();
+            return new HttpTransportResponse(httpResult, responseBody, null, connectNanos, conn::getHeaderField);
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    HttpURLConnection getConnection(URL url) throws IOException {
+        HttpURLConnection conn;
+
+        if (null != proxy) {
+            conn = (HttpURLConnection) url.openConnection(proxy);
+        } else {
+            conn = (HttpURLConnection) url.openConnection();
+        }
+        if (sslSocketFactory != null && conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory);
+        }
+        return conn;
+    }
+}
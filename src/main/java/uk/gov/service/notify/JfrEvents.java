@@ -0,0 +1,194 @@
+package uk.gov.service.notify;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits a Java Flight Recorder event, <code>uk.gov.service.notify.Request</code>, for every request to the Notify
+ * API, so slow requests can be lined up with GC pauses and socket waits in JDK Mission Control.
+ * <p>
+ * The client is compiled for Java 8, where <code>jdk.jfr</code> is not part of the platform API, so the event type
+ * is defined at runtime through <code>jdk.jfr.EventFactory</code> and driven through method handles. On a JVM
+ * without JFR every method here does nothing. While no recording has the event enabled, <code>begin</code> costs a
+ * single check and allocates nothing.
+ */
+final class JfrEvents {
+
+    static final String EVENT_NAME = "uk.gov.service.notify.Request";
+
+    private static final Logger LOGGER = Logger.getLogger(JfrEvents.class.getName());
+
+    private static final int METHOD = 0;
+    private static final int ENDPOINT = 1;
+    private static final int STATUS_CODE = 2;
+    private static final int BYTES_SENT = 3;
+    private static final int BYTES_RECEIVED = 4;
+    private static final int QUEUE_WAIT = 5;
+    private static final int SIGNING = 6;
+    private static final int CONNECT = 7;
+    private static final int PARSE = 8;
+
+    private static final Object FACTORY;
+    private static final Object EVENT_TYPE;
+    private static final MethodHandle IS_ENABLED;
+    private static final MethodHandle NEW_EVENT;
+    private static final MethodHandle BEGIN;
+    private static final MethodHandle END;
+    private static final MethodHandle SHOULD_COMMIT;
+    private static final MethodHandle SET;
+    private static final MethodHandle COMMIT;
+
+    static {
+        Object factory = null;
+        Object eventType = null;
+        MethodHandle isEnabled = null;
+        MethodHandle newEvent = null;
+        MethodHandle begin = null;
+        MethodHandle end = null;
+        MethodHandle shouldCommit = null;
+        MethodHandle set = null;
+        MethodHandle commit = null;
+        try {
+            ClassLoader loader = ClassLoader.getSystemClassLoader();
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory", true, loader);
+            Class<?> event = Class.forName("jdk.jfr.Event", true, loader);
+            Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType", true, loader);
+
+            List<Object> annotations = Arrays.asList(
+                    annotation("jdk.jfr.Name", EVENT_NAME),
+                    annotation("jdk.jfr.Label", "Notify API Request"),
+                    annotation("jdk.jfr.Description", "A request from the GOV.UK Notify Java client to the Notify API"),
+                    annotation("jdk.jfr.Category", new String[]{"GOV.UK Notify"}),
+                    annotation("jdk.jfr.StackTrace", false));
+            List<Object> fields = Arrays.asList(
+                    field(String.class, "method", "Method", null, null),
+                    field(String.class, "endpoint", "Endpoint", null, null),
+                    field(int.class, "statusCode", "Status Code", null, null),
+                    field(long.class, "bytesSent", "Bytes Sent", "jdk.jfr.DataAmount", "BYTES"),
+                    field(long.class, "bytesReceived", "Bytes Received", "jdk.jfr.DataAmount", "BYTES"),
+                    field(long.class, "queueWait", "Client Queue Wait", "jdk.jfr.Timespan", "NANOSECONDS"),
+                    field(long.class, "signing", "Token Signing Time", "jdk.jfr.Timespan", "NANOSECONDS"),
+                    field(long.class, "connect", "Connection Acquire Time", "jdk.jfr.Timespan", "NANOSECONDS"),
+                    field(long.class, "parse", "Response Parse Time", "jdk.jfr.Timespan", "NANOSECONDS"));
+
+            factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            eventType = eventFactory.getMethod("getEventType").invoke(factory);
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            newEvent = lookup.findVirtual(eventFactory, "newEvent", MethodType.methodType(event))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            begin = voidMethod(lookup, event, "begin");
+            end = voidMethod(lookup, event, "end");
+            commit = voidMethod(lookup, event, "commit");
+            shouldCommit = lookup.findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+        } catch (Throwable e) {
+            LOGGER.log(Level.FINE, "Java Flight Recorder events are not available", e);
+            factory = null;
+        }
+        FACTORY = factory;
+        EVENT_TYPE = eventType;
+        IS_ENABLED = isEnabled;
+        NEW_EVENT = newEvent;
+        BEGIN = begin;
+        END = end;
+        SHOULD_COMMIT = shouldCommit;
+        SET = set;
+        COMMIT = commit;
+    }
+
+    private JfrEvents() {
+    }
+
+    static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * @return an event that has begun, or null if JFR is not available or no recording has the event enabled
+     */
+    static Object begin() {
+        if (FACTORY == null) {
+            return null;
+        }
+        try {
+            if (!(boolean) IS_ENABLED.invokeExact(EVENT_TYPE)) {
+                return null;
+            }
+            Object event = (Object) NEW_EVENT.invokeExact(FACTORY);
+            BEGIN.invokeExact(event);
+            return event;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ends the event and commits it with the request's measurements, unless it fell under the recording's threshold.
+     *
+     * @param event an event returned by <code>begin</code>, or null to do nothing
+     */
+    static void commit(Object event, RequestMetrics metrics) {
+        if (event == null) {
+            return;
+        }
+        try {
+            END.invokeExact(event);
+            if (!(boolean) SHOULD_COMMIT.invokeExact(event)) {
+                return;
+            }
+            SET.invokeExact(event, METHOD, (Object) metrics.getMethod());
+            SET.invokeExact(event, ENDPOINT, (Object) metrics.getEndpoint());
+            SET.invokeExact(event, STATUS_CODE, (Object) metrics.getStatusCode());
+            SET.invokeExact(event, BYTES_SENT, (Object) metrics.getBytesSent());
+            SET.invokeExact(event, BYTES_RECEIVED, (Object) metrics.getBytesReceived());
+            SET.invokeExact(event, QUEUE_WAIT, (Object) metrics.getQueueWaitNanos());
+            SET.invokeExact(event, SIGNING, (Object) metrics.getSigningNanos());
+            SET.invokeExact(event, CONNECT, (Object) metrics.getConnectNanos());
+            SET.invokeExact(event, PARSE, (Object) metrics.getParseNanos());
+            COMMIT.invokeExact(event);
+        } catch (Throwable e) {
+            LOGGER.log(Level.FINE, "Could not commit Java Flight Recorder event", e);
+        }
+    }
+
+    private static MethodHandle voidMethod(MethodHandles.Lookup lookup, Class<?> event, String name) throws ReflectiveOperationException {
+        return lookup.findVirtual(event, name, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, Object.class));
+    }
+
+    private static Object annotation(String type, Object value) throws ReflectiveOperationException {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement", true, ClassLoader.getSystemClassLoader());
+        Constructor<?> constructor = annotationElement.getConstructor(Class.class, Object.class);
+        return constructor.newInstance(annotationClass(type), value);
+    }
+
+    private static Object field(Class<?> type, String name, String label, String unitAnnotation, String unit) throws ReflectiveOperationException {
+        List<Object> annotations = new ArrayList<>();
+        annotations.add(annotation("jdk.jfr.Label", label));
+        if (unitAnnotation != null) {
+            annotations.add(annotation(unitAnnotation, unit));
+        }
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", true, ClassLoader.getSystemClassLoader());
+        return valueDescriptor.getConstructor(Class.class, String.class, List.class)
+                .newInstance(type, name, Collections.unmodifiableList(annotations));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Annotation> annotationClass(String type) throws ClassNotFoundException {
+        return (Class<? extends Annotation>) Class.forName(type, true, ClassLoader.getSystemClassLoader());
+    }
+}
@@ -0,0 +1,367 @@
+package uk.gov.service.notify;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON object request body written as UTF-8 straight into a byte buffer, so a send builds no
+ * <code>JSONObject</code> and no intermediate <code>String</code>, and its length is known before it is sent.
+ * <p>
+ * Each thread keeps one buffer of up to {@link #MAX_RETAINED_CAPACITY} bytes for reuse, so in the steady state a
+ * send allocates nothing for its body. Close the body once the request is complete to give the buffer back. A body
+ * opened while the thread's buffer is in use, or one that outgrows it, gets a buffer of its own.
+ * <p>
+ * Values are written as <code>JSONObject</code> would write them: maps as objects, collections and arrays as
+ * arrays, enums by name, and <code>JSONString</code>s as their own JSON. Anything else is first turned into what
+ * <code>JSONObject.wrap</code> makes of it, as <code>new JSONObject(map)</code> does with its values.
+ * <p>
+ * The content of a {@link DocumentUpload} is not put in the buffer. Its place is recorded, and it is base64 encoded
+ * from its source in between the buffered parts each time the body is written.
+ */
+final class JsonBody implements RequestBody, AutoCloseable {
+
+    static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private byte[] buffer;
+    private int count;
+    private boolean hasFields;
+    private boolean ended;
+    private List<Upload> uploads;
+
+    private JsonBody() {
+        byte[] pooled = BUFFERS.get();
+        if (pooled != null) {
+            BUFFERS.set(null);
+            buffer = pooled;
+        } else {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        writeByte('{');
+    }
+
+    /**
+     * @return an empty object, ready for its fields
+     */
+    static JsonBody open() {
+        return new JsonBody();
+    }
+
+    /**
+     * Adds a field, unless the value is null or an empty string or map. This is how the client has always left
+     * optional fields out of a request.
+     */
+    JsonBody fieldIfPresent(final String name, final Object value) {
+        if (value == null
+                || value instanceof CharSequence && ((CharSequence) value).length() == 0
+                || value instanceof Map && ((Map<?, ?>) value).isEmpty()) {
+            return this;
+        }
+        return field(name, value);
+    }
+
+    JsonBody field(final String name, final Object value) {
+        if (ended) {
+            throw new IllegalStateException("The body has already been ended");
+        }
+        if (hasFields) {
+            writeByte(',');
+        }
+        hasFields = true;
+        writeString(name);
+        writeByte(':');
+        writeValue(value);
+        return this;
+    }
+
+    /**
+     * Closes the object, after which the body can be sent.
+     */
+    JsonBody end() {
+        if (!ended) {
+            writeByte('}');
+            ended = true;
+        }
+        return this;
+    }
+
+    @Override
+    public long contentLength() {
+        end();
+        long length = count;
+        if (uploads != null) {
+            for (Upload upload : uploads) {
+                length += upload.document.encodedLength();
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        end();
+        int written = 0;
+        if (uploads != null) {
+            for (Upload upload : uploads) {
+                out.write(buffer, written, upload.offset - written);
+                upload.document.writeEncodedTo(out);
+                written = upload.offset;
+            }
+        }
+        out.write(buffer, written, count - written);
+    }
+
+    /**
+     * @return a copy of the body, for tests and benchmarks
+     */
+    byte[] toByteArray() {
+        end();
+        if (uploads == null) {
+            return Arrays.copyOf(buffer, count);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) contentLength());
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Gives the buffer back to this thread for the next body.
+     */
+    @Override
+    public void close() {
+        if (buffer != null && buffer.length <= MAX_RETAINED_CAPACITY) {
+            BUFFERS.set(buffer);
+        }
+        buffer = null;
+    }
+
+    private void writeValue(final Object value) {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            writeAscii("null");
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            writeString(value.toString());
+        } else if (value instanceof Boolean) {
+            writeAscii(value.toString());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof BigInteger) {
+            writeAscii(value.toString());
+        } else if (value instanceof Float || value instanceof Double || value instanceof BigDecimal) {
+            writeAscii(JSONObject.numberToString((Number) value));
+        } else if (value instanceof DocumentUpload) {
+            writeUpload((DocumentUpload) value);
+        } else if (value instanceof JSONString) {
+            writeRaw(((JSONString) value).toJSONString());
+        } else if (value instanceof JSONObject || value instanceof JSONArray) {
+            writeRaw(value.toString());
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            writeByte('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    writeByte(',');
+                }
+                first = false;
+                writeValue(item);
+            }
+            writeByte(']');
+        } else if (value.getClass().isArray()) {
+            writeByte('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0) {
+                    writeByte(',');
+                }
+                writeValue(Array.get(value, i));
+            }
+            writeByte(']');
+        } else if (value instanceof Enum) {
+            writeString(((Enum<?>) value).name());
+        } else {
+            // anything else becomes what JSONObject would make of it: a string for java.* types, or a bean's properties
+            writeValue(JSONObject.wrap(value));
+        }
+    }
+
+    private void writeUpload(final DocumentUpload document) {
+        writeAscii("{\"file\":\"");
+        if (uploads == null) {
+            uploads = new ArrayList<>();
+        }
+        uploads.add(new Upload(count, document));
+        writeAscii("\",\"filename\":");
+        writeValue(document.getFilename());
+        writeAscii(",\"confirm_email_before_download\":");
+        writeValue(document.getConfirmEmailBeforeDownload());
+        writeAscii(",\"retention_period\":");
+        writeValue(document.getRetentionPeriod());
+        writeByte('}');
+    }
+
+    private void writeMap(final Map<?, ?> map) {
+        writeByte('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            // JSONObject leaves out null values
+            if (entry.getValue() == null) {
+                continue;
+            }
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+            writeString(String.valueOf(entry.getKey()));
+            writeByte(':');
+            writeValue(entry.getValue());
+        }
+        writeByte('}');
+    }
+
+    /**
+     * Writes a quoted string with the same escaping as <code>JSONObject.quote</code>.
+     */
+    private void writeString(final String value) {
+        ensureCapacity(value.length() + 2);
+        writeByte('"');
+        char previous = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    writeByte('\\');
+                    writeByte(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        writeByte('\\');
+                    }
+                    writeByte(c);
+                    break;
+                case '\b':
+                    writeAscii("\\b");
+                    break;
+                case '\t':
+                    writeAscii("\\t");
+                    break;
+                case '\n':
+                    writeAscii("\\n");
+                    break;
+                case '\f':
+                    writeAscii("\\f");
+                    break;
+                case '\r':
+                    writeAscii("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                        writeUnicodeEscape(c);
+                    } else if (c < 0x80) {
+                        writeByte(c);
+                    } else {
+                        i = writeUtf8(value, i, c);
+                    }
+            }
+            previous = c;
+        }
+        writeByte('"');
+    }
+
+    private int writeUtf8(final String value, final int index, final char c) {
+        ensureCapacity(4);
+        if (c < 0x800) {
+            buffer[count++] = (byte) (0xc0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            return index;
+        }
+        if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+            return index + 1;
+        }
+        if (Character.isSurrogate(c)) {
+            // an unpaired surrogate cannot be encoded, so write what String.getBytes(UTF_8) would
+            buffer[count++] = '?';
+            return index;
+        }
+        buffer[count++] = (byte) (0xe0 | (c >> 12));
+        buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        return index;
+    }
+
+    private void writeUnicodeEscape(final char c) {
+        ensureCapacity(6);
+        buffer[count++] = '\\';
+        buffer[count++] = 'u';
+        buffer[count++] = HEX[(c >> 12) & 0xf];
+        buffer[count++] = HEX[(c >> 8) & 0xf];
+        buffer[count++] = HEX[(c >> 4) & 0xf];
+        buffer[count++] = HEX[c & 0xf];
+    }
+
+    /**
+     * Writes text that is already JSON, such as a nested <code>JSONObject</code>.
+     */
+    private void writeRaw(final String json) {
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else {
+                i = writeUtf8(json, i, c);
+            }
+        }
+    }
+
+    private void writeAscii(final String ascii) {
+        ensureCapacity(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[count++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void writeByte(final int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (count + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+        }
+    }
+
+    private static final class Upload {
+        private final int offset;
+        private final DocumentUpload document;
+
+        private Upload(final int offset, final DocumentUpload document) {
+            this.offset = offset;
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package uk.gov.service.notify;
+
+/**
+ * Receives the measurements of every request a <code>NotificationClient</code> sends, for example to feed
+ * your own metrics library. <code>HistogramMetricsListener</code> keeps them in memory instead.
+ * <p>
+ * It is called once for every attempt, including each retry, on the thread that made the request, so it should
+ * return quickly. Exceptions it throws are logged and otherwise ignored.
+ */
+@FunctionalInterface
+public interface MetricsListener {
+
+    void onRequest(RequestMetrics metrics);
+}
@@ -5,194 +5,218 @@ import org.json.JSONObject;
 import java.time.ZonedDateTime;
 import java.util.Optional;
 import java.util.UUID;
-
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A notification read from the Notify API.
+ * <p>
+ * By default every field is decoded when the notification is created. A notification created with lazy decoding,
+ * for example by a client built with <code>lazyNotificationDecoding(true)</code>, keeps the parsed response and
+ * decodes each field, such as parsing its dates and ids, the first time it is read. A field that is never read is
+ * never decoded, and a malformed field only fails when it is read. Either kind can be shared between threads.
+ */
 public class Notification {
-    private UUID id;
-    private String reference;
-    private String emailAddress;
-    private String phoneNumber;
-    private String line1;
-    private String line2;
-    private String line3;
-    private String line4;
-    private String line5;
-    private String line6;
-    private String postcode;
-    private String postage;
-    private String notificationType;
-    private String status;
-    private String body;
-    private String subject;
-    private ZonedDateTime createdAt;
-    private ZonedDateTime sentAt;
-    private ZonedDateTime completedAt;
-    private ZonedDateTime estimatedDelivery;
-    private String createdByName;
+    private static final Field[] FIELDS = Field.values();
+    // stands in for a field that is decoded but null, since null in the cache means not decoded yet
+    private static final Object ABSENT = new Object();
+
+    // the response the fields are decoded from, or null if they were all decoded up front
+    private final JSONObject data;
+    private final Object[] decoded = new Object[FIELDS.length];
     private boolean isCostDataReady;
     private double costInPounds;
 
-    // Template fields
-    private UUID templateId;
-    private int templateVersion;
-    private String templateUri;
-
-    // CostDetails fields
-    private Integer billableSmsFragments;
-    private Double internationalRateMultiplier;
-    private Double smsRate;
-    private Integer billableSheetsOfPaper;
-    private String postageType;
-
     public Notification(String content){
-        JSONObject responseBodyAsJson = new JSONObject(content);
-        build(responseBodyAsJson);
+        this(new JSONObject(content), false);
     }
 
     public Notification(org.json.JSONObject data){
-        build(data);
-    }
-
-    private void build(JSONObject data) {
-        id = UUID.fromString(data.getString("id"));
-        reference = data.isNull("reference") ? null : data.getString("reference");
-        emailAddress = data.isNull("email_address") ? null : data.getString("email_address");
-        phoneNumber = data.isNull("phone_number") ? null : data.getString("phone_number");
-        line1 = data.isNull("line_1") ? null : data.getString("line_1");
-        line2 = data.isNull("line_2") ? null : data.getString("line_2");
-        line3 = data.isNull("line_3") ? null : data.getString("line_3");
-        line4 = data.isNull("line_4") ? null : data.getString("line_4");
-        line5 = data.isNull("line_5") ? null : data.getString("line_5");
-        line6 = data.isNull("line_6") ? null : data.getString("line_6");
-        postcode = data.isNull("postcode") ? null : data.getString("postcode");
-        postage = data.isNull("postage") ? null : data.getString("postage");
-        notificationType = data.getString("type");
-        JSONObject template = data.getJSONObject("template");
-        templateId = UUID.fromString(template.getString("id"));
-        templateVersion = template.getInt("version");
-        templateUri = template.getString("uri");
-        body = data.getString("body");
-        subject = data.isNull("subject") ? null : data.getString("subject");
-        status = data.getString("status");
-        createdAt = ZonedDateTime.parse(data.getString("created_at"));
-        sentAt =  data.isNull("sent_at") ? null : ZonedDateTime.parse(data.getString("sent_at"));
-        completedAt = data.isNull("completed_at") ? null : ZonedDateTime.parse(data.getString("completed_at"));
-        estimatedDelivery = data.isNull("estimated_delivery") ? null : ZonedDateTime.parse(data.getString("estimated_delivery"));
-        createdByName = data.isNull("created_by_name") ? null : data.getString("created_by_name");
-
-        // Deconstructing CostDetails
-        if (!data.isNull("cost_details")) {
-            JSONObject costDetails = data.getJSONObject("cost_details");
-            billableSmsFragments = costDetails.isNull("billable_sms_fragments") ? null : costDetails.getInt("billable_sms_fragments");
-            internationalRateMultiplier = costDetails.isNull("international_rate_multiplier") ? null : costDetails.getDouble("international_rate_multiplier");
-            smsRate = costDetails.isNull("sms_rate") ? null : costDetails.getDouble("sms_rate");
-            billableSheetsOfPaper = costDetails.isNull("billable_sheets_of_paper") ? null : costDetails.getInt("billable_sheets_of_paper");
-            postageType = costDetails.isNull("postage") ? null : costDetails.getString("postage");
+        this(data, false);
+    }
+
+    /**
+     * @param lazy true to keep the response and decode each field when it is first read, false to decode them all now
+     */
+    Notification(JSONObject data, boolean lazy) {
+        if (lazy) {
+            this.data = data;
         } else {
-            billableSmsFragments = null;
-            internationalRateMultiplier = null;
-            smsRate = null;
-            billableSheetsOfPaper = null;
-            postageType = null;
+            for (Field field : FIELDS) {
+                decoded[field.ordinal()] = decode(field, data);
+            }
+            this.data = null;
+        }
+    }
+
+    private Object get(Field field) {
+        Object value = decoded[field.ordinal()];
+        if (value == null) {
+            // Threads that race here each decode the field and store equal immutable values, and the response is
+            // only read, so no lock is needed for the notification to be shared
+            value = decode(field, data);
+            decoded[field.ordinal()] = value;
+        }
+        return value == ABSENT ? null : value;
+    }
+
+    private static Object decode(Field field, JSONObject data) {
+        Object value = field.decoder.apply(data);
+        return value != null ? value : ABSENT;
+    }
+
+    private static String optString(JSONObject data, String key) {
+        return data.isNull(key) ? null : data.getString(key);
+    }
+
+    private static ZonedDateTime optDateTime(JSONObject data, String key) {
+        return data.isNull(key) ? null : ZonedDateTime.parse(data.getString(key));
+    }
+
+    private static <T> T costDetail(JSONObject data, String key, BiFunction<JSONObject, String, T> getter) {
+        if (data.isNull("cost_details")) {
+            return null;
+        }
+        JSONObject costDetails = data.getJSONObject("cost_details");
+        return costDetails.isNull(key) ? null : getter.apply(costDetails, key);
+    }
+
+    // in the order the fields are decoded when it is done up front
+    private enum Field {
+        ID(data -> UUID.fromString(data.getString("id"))),
+        REFERENCE(data -> optString(data, "reference")),
+        EMAIL_ADDRESS(data -> optString(data, "email_address")),
+        PHONE_NUMBER(data -> optString(data, "phone_number")),
+        LINE_1(data -> optString(data, "line_1")),
+        LINE_2(data -> optString(data, "line_2")),
+        LINE_3(data -> optString(data, "line_3")),
+        LINE_4(data -> optString(data, "line_4")),
+        LINE_5(data -> optString(data, "line_5")),
+        LINE_6(data -> optString(data, "line_6")),
+        POSTCODE(data -> optString(data, "postcode")),
+        POSTAGE(data -> optString(data, "postage")),
+        NOTIFICATION_TYPE(data -> data.getString("type")),
+        TEMPLATE_ID(data -> UUID.fromString(data.getJSONObject("template").getString("id"))),
+        TEMPLATE_VERSION(data -> data.getJSONObject("template").getInt("version")),
+        TEMPLATE_URI(data -> data.getJSONObject("template").getString("uri")),
+        BODY(data -> data.getString("body")),
+        SUBJECT(data -> optString(data, "subject")),
+        STATUS(data -> data.getString("status")),
+        CREATED_AT(data -> ZonedDateTime.parse(data.getString("created_at"))),
+        SENT_AT(data -> optDateTime(data, "sent_at")),
+        COMPLETED_AT(data -> optDateTime(data, "completed_at")),
+        ESTIMATED_DELIVERY(data -> optDateTime(data, "estimated_delivery")),
+        CREATED_BY_NAME(data -> optString(data, "created_by_name")),
+        BILLABLE_SMS_FRAGMENTS(data -> costDetail(data, "billable_sms_fragments", JSONObject::getInt)),
+        INTERNATIONAL_RATE_MULTIPLIER(data -> costDetail(data, "international_rate_multiplier", JSONObject::getDouble)),
+        SMS_RATE(data -> costDetail(data, "sms_rate", JSONObject::getDouble)),
+        BILLABLE_SHEETS_OF_PAPER(data -> costDetail(data, "billable_sheets_of_paper", JSONObject::getInt)),
+        POSTAGE_TYPE(data -> costDetail(data, "postage", JSONObject::getString));
+
+        private final Function<JSONObject, Object> decoder;
+
+        Field(final Function<JSONObject, Object> decoder) {
+            this.decoder = decoder;
         }
     }
 
     public UUID getId() {
-        return id;
+        return (UUID) get(Field.ID);
     }
 
     public Optional<String> getReference() {
-        return Optional.ofNullable(reference);
+        return Optional.ofNullable((String) get(Field.REFERENCE));
     }
 
     public Optional<String> getEmailAddress() {
-        return Optional.ofNullable(emailAddress);
+        return Optional.ofNullable((String) get(Field.EMAIL_ADDRESS));
     }
 
     public Optional<String> getPhoneNumber() {
-        return Optional.ofNullable(phoneNumber);
+        return Optional.ofNullable((String) get(Field.PHONE_NUMBER));
     }
 
     public Optional<String> getLine1() {
-        return Optional.ofNullable(line1);
+        return Optional.ofNullable((String) get(Field.LINE_1));
     }
 
     public Optional<String> getLine2() {
-        return Optional.ofNullable(line2);
+        return Optional.ofNullable((String) get(Field.LINE_2));
     }
 
     public Optional<String> getLine3() {
-        return Optional.ofNullable(line3);
+        return Optional.ofNullable((String) get(Field.LINE_3));
     }
 
     public Optional<String> getLine4() {
-        return Optional.ofNullable(line4);
+        return Optional.ofNullable((String) get(Field.LINE_4));
     }
 
     public Optional<String> getLine5() {
-        return Optional.ofNullable(line5);
+        return Optional.ofNullable((String) get(Field.LINE_5));
     }
 
     public Optional<String> getLine6() {
-        return Optional.ofNullable(line6);
+        return Optional.ofNullable((String) get(Field.LINE_6));
     }
 
     public Optional<String> getPostcode() {
-        return Optional.ofNullable(postcode);
+        return Optional.ofNullable((String) get(Field.POSTCODE));
     }
 
     public Optional<String> getPostage() {
-        return Optional.ofNullable(postage);
+        return Optional.ofNullable((String) get(Field.POSTAGE));
     }
 
     public String getNotificationType() {
-        return notificationType;
+        return (String) get(Field.NOTIFICATION_TYPE);
     }
 
     public String getStatus() {
-        return status;
+        return (String) get(Field.STATUS);
     }
 
     public UUID getTemplateId() {
-        return templateId;
+        return (UUID) get(Field.TEMPLATE_ID);
     }
 
     public int getTemplateVersion() {
-        return templateVersion;
+        return (Integer) get(Field.TEMPLATE_VERSION);
     }
 
     public String getTemplateUri(){
-        return templateUri;
+        return (String) get(Field.TEMPLATE_URI);
     }
 
     public String getBody() {
-        return body;
+        return (String) get(Field.BODY);
     }
 
     public Optional<String> getSubject() {
-        return Optional.ofNullable(subject);
+        return Optional.ofNullable((String) get(Field.SUBJECT));
     }
 
     public ZonedDateTime getCreatedAt() {
-        return createdAt;
+        return (ZonedDateTime) get(Field.CREATED_AT);
     }
 
     public Optional<ZonedDateTime> getSentAt() {
-        return Optional.ofNullable(sentAt);
+        return Optional.ofNullable((ZonedDateTime) get(Field.SENT_AT));
     }
 
     public Optional<ZonedDateTime> getCompletedAt() {
-        return Optional.ofNullable(completedAt);
+        return Optional.ofNullable((ZonedDateTime) get(Field.COMPLETED_AT));
     }
 
     public Optional<String> getCreatedByName() {
-        return Optional.ofNullable(createdByName);
+        return Optional.ofNullable((String) get(Field.CREATED_BY_NAME));
     }
 
     /**
      * estimatedDelivery is only present on letters
      */
     public Optional<ZonedDateTime> getEstimatedDelivery() {
-        return Optional.ofNullable(estimatedDelivery);
+        return Optional.ofNullable((ZonedDateTime) get(Field.ESTIMATED_DELIVERY));
     }
 
     public boolean isCostDataReady() {
@@ -205,58 +229,58 @@ public class Notification {
 
     // Getters for CostDetails fields
     public Optional<Integer> getBillableSmsFragments() {
-        return Optional.ofNullable(billableSmsFragments);
+        return Optional.ofNullable((Integer) get(Field.BILLABLE_SMS_FRAGMENTS));
     }
 
     public Optional<Double> getInternationalRateMultiplier() {
-        return Optional.ofNullable(internationalRateMultiplier);
+        return Optional.ofNullable((Double) get(Field.INTERNATIONAL_RATE_MULTIPLIER));
     }
 
     public Optional<Double> getSmsRate() {
-        return Optional.ofNullable(smsRate);
+        return Optional.ofNullable((Double) get(Field.SMS_RATE));
     }
 
     public Optional<Integer> getBillableSheetsOfPaper() {
-        return Optional.ofNullable(billableSheetsOfPaper);
+        return Optional.ofNullable((Integer) get(Field.BILLABLE_SHEETS_OF_PAPER));
     }
 
     public Optional<String> getPostageType() {
-        return Optional.ofNullable(postageType);
+        return Optional.ofNullable((String) get(Field.POSTAGE_TYPE));
     }
 
     @Override
     public String toString() {
         return "Notification{" +
-                "id=" + id +
-                ", reference='" + reference + '\'' +
-                ", emailAddress='" + emailAddress + '\'' +
-                ", phoneNumber='" + phoneNumber + '\'' +
-                ", line1='" + line1 + '\'' +
-                ", line2='" + line2 + '\'' +
-                ", line3='" + line3 + '\'' +
-                ", line4='" + line4 + '\'' +
-                ", line5='" + line5 + '\'' +
-                ", line6='" + line6 + '\'' +
-                ", postcode='" + postcode + '\'' +
-                ", notificationType='" + notificationType + '\'' +
-                ", status='" + status + '\'' +
-                ", templateId=" + templateId +
-                ", templateVersion=" + templateVersion +
-                ", templateUri='" + templateUri + '\'' +
-                ", body='" + body + '\'' +
-                ", subject='" + subject + '\'' +
-                ", createdAt=" + createdAt +
-                ", sentAt=" + sentAt +
-                ", completedAt=" + completedAt +
-                ", estimatedDelivery=" + estimatedDelivery +
-                ", createdByName=" + createdByName +
+                "id=" + get(Field.ID) +
+                ", reference='" + get(Field.REFERENCE) + '\'' +
+                ", emailAddress='" + get(Field.EMAIL_ADDRESS) + '\'' +
+                ", phoneNumber='" + get(Field.PHONE_NUMBER) + '\'' +
+                ", line1='" + get(Field.LINE_1) + '\'' +
+                ", line2='" + get(Field.LINE_2) + '\'' +
+                ", line3='" + get(Field.LINE_3) + '\'' +
+                ", line4='" + get(Field.LINE_4) + '\'' +
+                ", line5='" + get(Field.LINE_5) + '\'' +
+                ", line6='" + get(Field.LINE_6) + '\'' +
+                ", postcode='" + get(Field.POSTCODE) + '\'' +
+                ", notificationType='" + get(Field.NOTIFICATION_TYPE) + '\'' +
+                ", status='" + get(Field.STATUS) + '\'' +
+                ", templateId=" + get(Field.TEMPLATE_ID) +
+                ", templateVersion=" + get(Field.TEMPLATE_VERSION) +
+                ", templateUri='" + get(Field.TEMPLATE_URI) + '\'' +
+                ", body='" + get(Field.BODY) + '\'' +
+                ", subject='" + get(Field.SUBJECT) + '\'' +
+                ", createdAt=" + get(Field.CREATED_AT) +
+                ", sentAt=" + get(Field.SENT_AT) +
+                ", completedAt=" + get(Field.COMPLETED_AT) +
+                ", estimatedDelivery=" + get(Field.ESTIMATED_DELIVERY) +
+                ", createdByName=" + get(Field.CREATED_BY_NAME) +
                 ", isCostDataReady=" + isCostDataReady +
                 ", costInPounds=" + costInPounds +
-                ", billableSmsFragments=" + billableSmsFragments +
-                ", internationalRateMultiplier=" + internationalRateMultiplier +
-                ", smsRate=" + smsRate +
-                ", billableSheetsOfPaper=" + billableSheetsOfPaper +
-                ", postageType='" + postageType + '\'' +
+                ", billableSmsFragments=" + get(Field.BILLABLE_SMS_FRAGMENTS) +
+                ", internationalRateMultiplier=" + get(Field.INTERNATIONAL_RATE_MULTIPLIER) +
+                ", smsRate=" + get(Field.SMS_RATE) +
+                ", billableSheetsOfPaper=" + get(Field.BILLABLE_SHEETS_OF_PAPER) +
+                ", postageType='" + get(Field.POSTAGE_TYPE) + '\'' +
                 '}';
     }
 }
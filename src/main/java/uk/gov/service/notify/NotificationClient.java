@@ -2,27 +2,33 @@ package uk.gov.service.notify;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.Base64InputStream;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.http.client.utils.URIBuilder;
 import org.json.JSONObject;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
+import java.io.OutputStream;
 import java.net.Proxy;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +44,15 @@ public class NotificationClient implements NotificationClientApi {
     private final String serviceId;
     private final String baseUrl;
     private final Proxy proxy;
+    private final HttpTransport transport;
+    private final BearerTokenCache tokenCache;
+    private final RateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final RetryPolicy retryPolicy;
+    private final RetryPolicy sendRetryPolicy;
+    private final MetricsListener metricsListener;
+    private final PersonalisationValidator personalisationValidator;
+    private final boolean lazyNotificationDecoding;
     private final String version;
 
     /**
@@ -92,13 +107,15 @@ public class NotificationClient implements NotificationClientApi {
                 proxy,
                 null
         );
-        try {
-            setDefaultSSLContext();
-        } catch (NoSuchAlgorithmException e) {
-            LOGGER.log(Level.SEVERE, e.toString(), e);
-        }
     }
 
+    /**
+     *
+     * @param apiKey Generate an API key by signing in to GOV.UK Notify, https://www.notifications.service.gov.uk, and going to the **API integration** page
+     * @param baseUrl base URL, defaults to https://api.notifications.service.gov.uk
+     * @param proxy Proxy used on the http requests
+     * @param sslContext SSL context for this client's HTTPS connections, or null to use the JVM's default
+     */
     public NotificationClient(final String apiKey,
                               final String baseUrl,
                               final Proxy proxy,
@@ -108,12 +125,76 @@ public class NotificationClient implements NotificationClientApi {
         this.serviceId = extractServiceId(apiKey);
         this.baseUrl = baseUrl;
         this.proxy = proxy;
-        if (sslContext != null){
-            setCustomSSLContext(sslContext);
+        this.transport = new HttpUrlConnectionTransport(proxy, sslContext);
+        this.tokenCache = new BearerTokenCache(serviceId, this.apiKey, 0);
+        this.rateLimiter = null;
+        this.concurrencyLimiter = null;
+        this.retryPolicy = RetryPolicy.none();
+        this.sendRetryPolicy = RetryPolicy.none();
+        this.metricsListener = null;
+        this.personalisationValidator = null;
+        this.lazyNotificationDecoding = false;
+        this.version = getVersion();
+    }
+
+    private NotificationClient(final Builder builder) {
+        this.apiKey = extractApiKey(builder.apiKey);
+        this.serviceId = extractServiceId(builder.apiKey);
+        this.baseUrl = builder.baseUrl;
+        this.proxy = builder.proxy;
+        this.transport = builder.transport != null ? builder.transport : new HttpUrlConnectionTransport(builder.proxy, builder.sslContext);
+        this.tokenCache = new BearerTokenCache(serviceId, apiKey, builder.tokenReuseSeconds);
+        if (builder.rateLimiter != null) {
+            this.rateLimiter = builder.rateLimiter;
+        } else if (builder.requestsPerMinute > 0) {
+            this.rateLimiter = RateLimiter.forService(serviceId, builder.requestsPerMinute, builder.rateLimitMode);
+        } else {
+            this.rateLimiter = null;
         }
+        this.concurrencyLimiter = builder.concurrencyLimiter;
+        this.retryPolicy = builder.retryPolicy;
+        this.sendRetryPolicy = builder.sendRetryPolicy;
+        this.metricsListener = builder.metricsListener;
+        if (builder.personalisationValidator != null) {
+            this.personalisationValidator = builder.personalisationValidator;
+        } else if (builder.validatePersonalisation) {
+            // templates are looked up lazily, so the cache can be given this client before it is fully built
+            this.personalisationValidator = new PersonalisationValidator(TemplateCache.builder(this).build());
+        } else {
+            this.personalisationValidator = null;
+        }
+        this.lazyNotificationDecoding = builder.lazyNotificationDecoding;
         this.version = getVersion();
     }
 
+    private NotificationClient(final NotificationClient client, final RetryPolicy retryPolicy, final RetryPolicy sendRetryPolicy) {
+        this.apiKey = client.apiKey;
+        this.serviceId = client.serviceId;
+        this.baseUrl = client.baseUrl;
+        this.proxy = client.proxy;
+        this.transport = client.transport;
+        this.tokenCache = client.tokenCache;
+        this.rateLimiter = client.rateLimiter;
+        this.concurrencyLimiter = client.concurrencyLimiter;
+        this.retryPolicy = retryPolicy;
+        this.sendRetryPolicy = sendRetryPolicy;
+        this.metricsListener = client.metricsListener;
+        this.personalisationValidator = client.personalisationValidator;
+        this.lazyNotificationDecoding = client.lazyNotificationDecoding;
+        this.version = client.version;
+    }
+
+    /**
+     * Use the builder when you need more control over the client than the constructors give you,
+     * for example to share a pooled <code>HttpTransport</code> between several clients.
+     *
+     * @param apiKey Generate an API key by signing in to GOV.UK Notify, https://www.notifications.service.gov.uk, and going to the **API integration** page
+     * @return a <code>Builder</code> that sends requests to the live Notify API unless told otherwise
+     */
+    public static Builder builder(final String apiKey) {
+        return new Builder(apiKey);
+    }
+
     public String getUserAgent() {
         return "NOTIFY-API-JAVA-CLIENT/" + version;
     }
@@ -134,6 +215,46 @@ public class NotificationClient implements NotificationClientApi {
         return proxy;
     }
 
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    public Optional<RateLimiter> getRateLimiter() {
+        return Optional.ofNullable(rateLimiter);
+    }
+
+    public Optional<AdaptiveConcurrencyLimiter> getConcurrencyLimiter() {
+        return Optional.ofNullable(concurrencyLimiter);
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public RetryPolicy getSendRetryPolicy() {
+        return sendRetryPolicy;
+    }
+
+    public Optional<MetricsListener> getMetricsListener() {
+        return Optional.ofNullable(metricsListener);
+    }
+
+    public Optional<PersonalisationValidator> getPersonalisationValidator() {
+        return Optional.ofNullable(personalisationValidator);
+    }
+
+    public boolean isLazyNotificationDecoding() {
+        return lazyNotificationDecoding;
+    }
+
+    /**
+     * @return a client sharing this one's transport, token cache and limiters that makes every request once,
+     * for callers such as <code>AsyncNotificationClient</code> that schedule their own retries
+     */
+    NotificationClient withoutRetries() {
+        return new NotificationClient(this, RetryPolicy.none(), RetryPolicy.none());
+    }
+
     public SendEmailResponse sendEmail(String templateId,
                                        String emailAddress,
                                        Map<String, ?> personalisation,
@@ -157,8 +278,9 @@ public class NotificationClient implements NotificationClientApi {
                                        String reference,
                                        String emailReplyToId,
                                        URI oneClickUnsubscribeURL) throws NotificationClientException {
+        validatePersonalisation(templateId, personalisation);
 
-        JSONObject body = createBodyForPostRequest(templateId,
+        JsonBody body = createBodyForPostRequest(templateId,
                 null,
                 emailAddress,
                 personalisation,
@@ -166,18 +288,14 @@ public class NotificationClient implements NotificationClientApi {
                 null,
                 null);
 
-        if(emailReplyToId != null && !emailReplyToId.isEmpty())
-        {
-            body.put("email_reply_to_id", emailReplyToId);
-        }
+        body.fieldIfPresent("email_reply_to_id", emailReplyToId);
 
         if(oneClickUnsubscribeURL != null)
         {
-            body.put("one_click_unsubscribe_url", oneClickUnsubscribeURL);
+            body.field("one_click_unsubscribe_url", oneClickUnsubscribeURL.toString());
         }
 
-        HttpURLConnection conn = createConnectionAndSetHeaders(baseUrl + "/v2/notifications/email", "POST");
-        String response = performPostRequest(conn, body, HttpsURLConnection.HTTP_CREATED);
+        String response = performSendRequest(baseUrl + "/v2/notifications/email", body);
         return new SendEmailResponse(response);
     }
 
@@ -190,8 +308,9 @@ public class NotificationClient implements NotificationClientApi {
                                    Map<String, ?> personalisation,
                                    String reference,
                                    String smsSenderId) throws NotificationClientException {
+        validatePersonalisation(templateId, personalisation);
 
-        JSONObject body = createBodyForPostRequest(templateId,
+        JsonBody body = createBodyForPostRequest(templateId,
                 phoneNumber,
                 null,
                 personalisation,
@@ -199,37 +318,122 @@ public class NotificationClient implements NotificationClientApi {
                 null,
                 null);
 
-        if( smsSenderId != null && !smsSenderId.isEmpty()){
-            body.put("sms_sender_id", smsSenderId);
-        }
-        HttpURLConnection conn = createConnectionAndSetHeaders(baseUrl + "/v2/notifications/sms", "POST");
-        String response = performPostRequest(conn, body, HttpsURLConnection.HTTP_CREATED);
+        body.fieldIfPresent("sms_sender_id", smsSenderId);
+        String response = performSendRequest(baseUrl + "/v2/notifications/sms", body);
         return new SendSmsResponse(response);
     }
 
     public SendLetterResponse sendLetter(String templateId, Map<String, ?> personalisation, String reference) throws NotificationClientException {
-        JSONObject body = createBodyForPostRequest(templateId, null, null, personalisation, reference, null, null);
-        HttpURLConnection conn = createConnectionAndSetHeaders(baseUrl + "/v2/notifications/letter", "POST");
-        String response = performPostRequest(conn, body, HttpsURLConnection.HTTP_CREATED);
+        validatePersonalisation(templateId, personalisation);
+        JsonBody body = createBodyForPostRequest(templateId, null, null, personalisation, reference, null, null);
+        String response = performSendRequest(baseUrl + "/v2/notifications/letter", body);
         return new SendLetterResponse(response);
     }
 
     public Notification getNotificationById(String notificationId) throws NotificationClientException {
         String url = baseUrl + "/v2/notifications/" + notificationId;
-        HttpURLConnection conn = createConnectionAndSetHeaders(url, "GET");
-        String response = performGetRequest(conn);
-        return new Notification(response);
+        String response = performGetRequest(url);
+        return new Notification(new JSONObject(response), lazyNotificationDecoding);
 
     }
 
     public byte[] getPdfForLetter(String notificationId) throws NotificationClientException {
         String url = baseUrl + "/v2/notifications/" + notificationId + "/pdf";
-        HttpURLConnection conn = createConnectionAndSetHeaders(url, "GET");
+        return performRawGetRequest(url);
+    }
 
-        return performRawGetRequest(conn);
+    @Override
+    public long getPdfForLetter(String notificationId, OutputStream out) throws NotificationClientException {
+        String url = baseUrl + "/v2/notifications/" + notificationId + "/pdf";
+        return performRequest("GET", url, null, HttpsURLConnection.HTTP_OK, body -> download(body, out, "the output stream", false));
+    }
+
+    @Override
+    public long getPdfForLetter(String notificationId, Path destination) throws NotificationClientException {
+        String url = baseUrl + "/v2/notifications/" + notificationId + "/pdf";
+        return performRequest("GET", url, null, HttpsURLConnection.HTTP_OK, body -> {
+            OutputStream file;
+            try {
+                file = Files.newOutputStream(destination);
+            } catch (IOException e) {
+                throw cannotWrite(destination, e);
+            }
+            try (OutputStream out = file) {
+                long count = download(body, out, destination, true);
+                // closed here so a failure to flush the file is reported as a local one; the second close does nothing
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw cannotWrite(destination, e);
+                }
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Copies a response body to a destination outside the client. Failures to write to the destination are local,
+     * so they are not retried as if they were connection errors.
+     *
+     * @param restartable whether a retry writes the destination again from the start. If not, a response that fails
+     *                    once part of it has been written is not retried either.
+     */
+    private static long download(InputStream body, OutputStream out, Object destination, boolean restartable) throws IOException, NotificationClientException {
+        byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+        long count = 0;
+        while (true) {
+            int n;
+            try {
+                n = body.read(buffer);
+            } catch (IOException e) {
+                if (count > 0 && !restartable) {
+                    throw new NotificationClientException("Reading the response failed after " + count + " bytes were written to " + destination, e).doNotRetry();
+                }
+                throw e;
+            }
+            if (n == -1) {
+                return count;
+            }
+            try {
+                out.write(buffer, 0, n);
+            } catch (IOException e) {
+                throw cannotWrite(destination, e);
+            }
+            count += n;
+        }
+    }
+
+    private static NotificationClientException cannotWrite(Object destination, IOException e) {
+        LOGGER.log(Level.SEVERE, e.toString(), e);
+        return new NotificationClientException("Can't write to " + destination, e).doNotRetry();
     }
 
     public NotificationList getNotifications(String status, String notification_type, String reference, String olderThanId) throws NotificationClientException {
+        String url = getNotificationsUrl(status, notification_type, reference, olderThanId);
+        return performRequest("GET", url, null, HttpsURLConnection.HTTP_OK, body -> NotificationList.parse(body, lazyNotificationDecoding));
+    }
+
+    /**
+     * Gets a page of notifications like <code>getNotifications</code>, but hands each notification to the consumer
+     * as it is read from the response instead of collecting the page into a list.
+     * If a retry policy retries a response that failed part way through, notifications already passed to the
+     * consumer are passed to it again.
+     *
+     * @param status If status is not empty or null only notifications with the given status are returned.
+     * @param notification_type If notification_type is not empty or null only notifications of the given type are returned.
+     * @param reference If reference is not empty or null only the notifications with that reference are returned.
+     * @param olderThanId If olderThanId is not empty or null only the notifications older than that notification id are returned.
+     * @param consumer Receives each notification on the page in turn.
+     * @return the link to the next page, if there is one
+     * @throws NotificationClientException see https://docs.notifications.service.gov.uk/java.html#get-the-status-of-multiple-messages-error-codes
+     */
+    public Optional<String> getNotifications(String status, String notification_type, String reference, String olderThanId, Consumer<Notification> consumer) throws NotificationClientException {
+        String url = getNotificationsUrl(status, notification_type, reference, olderThanId);
+        return performRequest("GET", url, null, HttpsURLConnection.HTTP_OK, body -> NotificationList.parse(body, consumer, lazyNotificationDecoding))
+                .getNextPageLink();
+    }
+
+    private String getNotificationsUrl(String status, String notification_type, String reference, String olderThanId) throws NotificationClientException {
         try {
             URIBuilder builder = new URIBuilder(baseUrl + "/v2/notifications");
             if (status != null && !status.isEmpty()) {
@@ -244,10 +448,7 @@ public class NotificationClient implements NotificationClientApi {
             if (olderThanId != null && !olderThanId.isEmpty()) {
                 builder.addParameter("older_than", olderThanId);
             }
-
-            HttpURLConnection conn = createConnectionAndSetHeaders(builder.toString(), "GET");
-            String response = performGetRequest(conn);
-            return new NotificationList(response);
+            return builder.toString();
         } catch (URISyntaxException e) {
             LOGGER.log(Level.SEVERE, e.toString(), e);
             throw new NotificationClientException(e);
@@ -256,15 +457,13 @@ public class NotificationClient implements NotificationClientApi {
 
     public Template getTemplateById(String templateId) throws NotificationClientException{
         String url = baseUrl + "/v2/template/" + templateId;
-        HttpURLConnection conn = createConnectionAndSetHeaders(url, "GET");
-        String response = performGetRequest(conn);
+        String response = performGetRequest(url);
         return new Template(response);
     }
 
     public Template getTemplateVersion(String templateId, int version) throws NotificationClientException{
         String url = baseUrl + "/v2/template/" + templateId + "/version/" + version;
-        HttpURLConnection conn = createConnectionAndSetHeaders(url, "GET");
-        String response = performGetRequest(conn);
+        String response = performGetRequest(url);
         return new Template(response);
     }
 
@@ -274,8 +473,7 @@ public class NotificationClient implements NotificationClientApi {
             if (templateType != null && !templateType.isEmpty()) {
                 builder.addParameter("type", templateType);
             }
-            HttpURLConnection conn = createConnectionAndSetHeaders(builder.toString(), "GET");
-            String response = performGetRequest(conn);
+            String response = performGetRequest(builder.toString());
             return new TemplateList(response);
         } catch (URISyntaxException e) {
             LOGGER.log(Level.SEVERE, e.toString(), e);
@@ -284,12 +482,8 @@ public class NotificationClient implements NotificationClientApi {
     }
 
     public TemplatePreview generateTemplatePreview(String templateId, Map<String, Object> personalisation) throws NotificationClientException {
-        JSONObject body = new JSONObject();
-        if (personalisation != null && !personalisation.isEmpty()) {
-            body.put("personalisation", new JSONObject(personalisation));
-        }
-        HttpURLConnection conn = createConnectionAndSetHeaders(baseUrl + "/v2/template/" + templateId + "/preview", "POST");
-        String response = performPostRequest(conn, body, HttpsURLConnection.HTTP_OK);
+        JsonBody body = JsonBody.open().fieldIfPresent("personalisation", personalisation);
+        String response = performPostRequest(baseUrl + "/v2/template/" + templateId + "/preview", body, HttpsURLConnection.HTTP_OK);
         return new TemplatePreview(response);
     }
 
@@ -299,8 +493,7 @@ public class NotificationClient implements NotificationClientApi {
             if (olderThanId != null && !olderThanId.isEmpty()) {
                 builder.addParameter("older_than", olderThanId);
             }
-            HttpURLConnection conn = createConnectionAndSetHeaders(builder.toString(), "GET");
-            String response = performGetRequest(conn);
+            String response = performGetRequest(builder.toString());
             return new ReceivedTextMessageList(response);
         } catch (URISyntaxException e){
             LOGGER.log(Level.SEVERE, e.toString(), e);
@@ -405,6 +598,11 @@ public class NotificationClient implements NotificationClientApi {
      * The prepareUpload method creates a <code>JSONObject</code> which will need to
      * be added to the personalisation map.
      *
+     * To send a document without holding an encoded copy of it in memory, add a <code>DocumentUpload</code> to the
+     * personalisation instead.
+     *
+     * @see DocumentUpload
+     *
      * @param documentContents byte[] of the document
      * @return <code>JSONObject</code> a json object to be added to the personalisation is returned
      */
@@ -451,139 +649,204 @@ public class NotificationClient implements NotificationClientApi {
         return prepareUpload(documentContents, filename, confirmEmailBeforeDownload, retentionPeriod.toString());
     }
 
-    private String performPostRequest(HttpURLConnection conn, JSONObject body, int expectedStatusCode) throws NotificationClientException {
-        try{
-            OutputStreamWriter wr = new OutputStreamWriter(conn.getOutputStream(), UTF_8);
-            wr.write(body.toString());
-            wr.flush();
-
-            int httpResult = conn.getResponseCode();
-            if (httpResult == expectedStatusCode) {
-                return readStream(conn.getInputStream());
-            } else {
-                throw new NotificationClientException(httpResult, readStream(conn.getErrorStream()));
-            }
+    private void validatePersonalisation(String templateId, Map<String, ?> personalisation) throws NotificationClientException {
+        if (personalisationValidator != null) {
+            personalisationValidator.validate(templateId, personalisation);
+        }
+    }
 
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, e.toString(), e);
-            throw new NotificationClientException(e);
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
+    private String performSendRequest(String url, JsonBody body) throws NotificationClientException {
+        try (JsonBody requestBody = body.end()) {
+            return performRequest("POST", url, requestBody, HttpsURLConnection.HTTP_CREATED, this::readStream, true);
         }
     }
 
-    private String performGetRequest(HttpURLConnection conn) throws NotificationClientException {
-        try{
-            int httpResult = conn.getResponseCode();
-            StringBuilder stringBuilder;
-            if (httpResult == 200) {
-                return readStream(conn.getInputStream());
-            } else {
-                throw new NotificationClientException(httpResult, readStream(conn.getErrorStream()));
-            }
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, e.toString(), e);
-            throw new NotificationClientException(e);
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
+    private String performPostRequest(String url, JsonBody body, int expectedStatusCode) throws NotificationClientException {
+        try (JsonBody requestBody = body.end()) {
+            return performRequest("POST", url, requestBody, expectedStatusCode, this::readStream, false);
+        }
+    }
+
+    private String performGetRequest(String url) throws NotificationClientException {
+        return performRequest("GET", url, null, HttpsURLConnection.HTTP_OK, this::readStream);
+    }
+
+    private byte[] performRawGetRequest(String url) throws NotificationClientException {
+        return performRequest("GET", url, null, HttpsURLConnection.HTTP_OK, IOUtils::toByteArray);
+    }
+
+    private <T> T performRequest(String method, String url, RequestBody body, int expectedStatusCode, ResponseReader<T> reader) throws NotificationClientException {
+        return performRequest(method, url, body, expectedStatusCode, reader, false);
+    }
+
+    /**
+     * @param send true for requests that send a notification, which use the send retry policy and the concurrency
+     *             limiter; anything else, including a template preview, is retried like a read
+     */
+    private <T> T performRequest(String method, String url, RequestBody body, int expectedStatusCode, ResponseReader<T> reader, boolean send) throws NotificationClientException {
+        RetryPolicy policy = send ? sendRetryPolicy : retryPolicy;
+        policy.recordRequest();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // The request is rebuilt for each attempt so a retry after a long wait still has a fresh token
+                T result = performAttempt(method, url, body, expectedStatusCode, reader, send);
+                policy.getListener().onComplete(attempt, null);
+                return result;
+            } catch (NotificationClientException e) {
+                long delayMillis = policy.retryDelayMillis(attempt, e);
+                if (delayMillis < 0) {
+                    policy.getListener().onComplete(attempt, e);
+                    throw e;
+                }
+                policy.getListener().onRetry(attempt, e, delayMillis);
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new NotificationClientException("Interrupted while waiting to retry the request", interrupted);
+                }
             }
         }
     }
 
-    private byte[] performRawGetRequest(HttpURLConnection conn) throws NotificationClientException {
-        byte[] out;
-        try{
-            int httpResult = conn.getResponseCode();
-            if (httpResult == 200) {
-                InputStream is = conn.getInputStream();
-                out = IOUtils.toByteArray(is);
-            } else {
-                throw new NotificationClientException(httpResult, readStream(conn.getErrorStream()));
+    private <T> T performAttempt(String method, String url, RequestBody body, int expectedStatusCode, ResponseReader<T> reader, boolean send) throws NotificationClientException {
+        Object event = JfrEvents.begin();
+        boolean measured = metricsListener != null || event != null;
+        long started = System.nanoTime();
+        AdaptiveConcurrencyLimiter limiter = send ? concurrencyLimiter : null;
+        // The concurrency limit is taken first, so waiting for it does not use up the rate limiter's permits
+        long queueWaitNanos = limiter != null ? limiter.acquire() : 0;
+        if (rateLimiter != null) {
+            try {
+                queueWaitNanos += rateLimiter.acquire();
+            } catch (NotificationClientException | RuntimeException e) {
+                if (limiter != null) {
+                    limiter.onIgnored();
+                }
+                throw e;
+            }
+        }
+        HttpTransportRequest request = null;
+        long sent = 0;
+        long signingNanos = 0;
+        int httpResult = 0;
+        long connectNanos = -1;
+        long parseNanos = -1;
+        CountingInputStream responseBody = null;
+        // The request is signed inside the try so the finally gives back the limiter's place even if signing fails
+        try {
+            long signingStarted = System.nanoTime();
+            request = createRequest(url, method, body);
+            sent = System.nanoTime();
+            signingNanos = sent - signingStarted;
+            try (HttpTransportResponse response = transport.execute(request)) {
+                httpResult = response.getStatusCode();
+                connectNanos = response.getConnectNanos();
+                InputStream in = response.getBody();
+                if (measured) {
+                    in = responseBody = new CountingInputStream(in);
+                }
+                if (httpResult == expectedStatusCode) {
+                    long parseStarted = System.nanoTime();
+                    T result = reader.read(in);
+                    parseNanos = System.nanoTime() - parseStarted;
+                    return result;
+                } else {
+                    NotificationClientException failure = new NotificationClientException(httpResult, readStream(in));
+                    if (httpResult == 429) {
+                        failure.retryAfter(parseRetryAfter(response.getHeader("Retry-After")));
+                    }
+                    throw failure;
+                }
             }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, e.toString(), e);
             throw new NotificationClientException(e);
         } finally {
-            if (conn != null) {
-                conn.disconnect();
+            if (limiter != null) {
+                releaseConcurrencyLimit(limiter, request != null, sent, httpResult, expectedStatusCode);
+            }
+            if (measured) {
+                long bytesReceived = responseBody != null ? responseBody.getByteCount() : 0;
+                RequestMetrics metrics = new RequestMetrics(method, RequestMetrics.endpointOf(url), httpResult,
+                        body != null ? body.contentLength() : 0, bytesReceived, queueWaitNanos, signingNanos,
+                        connectNanos, parseNanos, System.nanoTime() - started);
+                JfrEvents.commit(event, metrics);
+                if (metricsListener != null) {
+                    reportMetrics(metrics);
+                }
             }
         }
-        return out;
     }
 
-    private HttpURLConnection createConnectionAndSetHeaders(String urlString, String method) throws NotificationClientException {
-        try
-        {
-            URL url = new URL(urlString);
-            HttpURLConnection conn = getConnection(url);
-            conn.setRequestMethod(method);
-            Authentication authentication = new Authentication();
-            String token = authentication.create(serviceId, apiKey);
-            conn.setRequestProperty("Authorization", "Bearer " + token);
-            conn.setRequestProperty("User-agent", getUserAgent());
-            if (method.equals("POST")) {
-                conn.setDoOutput(true);
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setRequestProperty("Accept", "application/json");
-
+    /**
+     * @param retryAfter a <code>Retry-After</code> header, either a number of seconds or an HTTP date
+     * @return how long it asks the client to wait in milliseconds, or 0 if there was no usable header
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return 0;
             }
-            return conn;
-        }catch (IOException e) {
-            LOGGER.log(Level.SEVERE, e.toString(), e);
-            throw new NotificationClientException(e);
         }
     }
 
-    HttpURLConnection getConnection(URL url) throws IOException {
-        HttpURLConnection conn;
-
-        if (null != proxy) {
-            conn = (HttpURLConnection) url.openConnection(proxy);
+    private void releaseConcurrencyLimit(AdaptiveConcurrencyLimiter limiter, boolean signed, long sent, int httpResult, int expectedStatusCode) {
+        if (!signed) {
+            // the request was never sent, so it says nothing about how loaded Notify is
+            limiter.onIgnored();
+        } else if (httpResult == expectedStatusCode) {
+            limiter.onSuccess(sent, System.nanoTime() - sent);
+        } else if (httpResult == 0 || httpResult == 429 || httpResult >= 500) {
+            limiter.onDropped(sent);
         } else {
-            conn = (HttpURLConnection) url.openConnection();
+            limiter.onIgnored();
         }
-        return conn;
     }
 
-    private JSONObject createBodyForPostRequest(final String templateId,
-                                                final String phoneNumber,
-                                                final String emailAddress,
-                                                final Map<String, ?> personalisation,
-                                                final String reference,
-                                                final String encodedFileData,
-                                                final String postage) {
-        JSONObject body = new JSONObject();
-
-        if(phoneNumber != null && !phoneNumber.isEmpty()) {
-            body.put("phone_number", phoneNumber);
-        }
-
-        if(emailAddress != null && !emailAddress.isEmpty()) {
-            body.put("email_address", emailAddress);
-        }
-
-        if(templateId != null && !templateId.isEmpty()) {
-            body.put("template_id", templateId);
-        }
-
-        if (personalisation != null && !personalisation.isEmpty()) {
-            body.put("personalisation", personalisation);
+    private void reportMetrics(RequestMetrics metrics) {
+        try {
+            metricsListener.onRequest(metrics);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Metrics listener failed", e);
         }
+    }
 
-        if(reference != null && !reference.isEmpty()){
-            body.put("reference", reference);
+    private HttpTransportRequest createRequest(String url, String method, RequestBody body) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Authorization", "Bearer " + tokenCache.getToken());
+        headers.put("User-agent", getUserAgent());
+        if (method.equals("POST")) {
+            headers.put("Content-Type", "application/json");
+            headers.put("Accept", "application/json");
         }
+        return new HttpTransportRequest(method, url, headers, body);
+    }
 
-        if(encodedFileData != null && !encodedFileData.isEmpty()) {
-            body.put("content", encodedFileData);
-        }
-        if(postage != null && !postage.isEmpty()){
-            body.put("postage", postage);
-        }
-        return body;
+    // package-private for the benchmarks
+    JsonBody createBodyForPostRequest(final String templateId,
+                                      final String phoneNumber,
+                                      final String emailAddress,
+                                      final Map<String, ?> personalisation,
+                                      final String reference,
+                                      final String encodedFileData,
+                                      final String postage) {
+        return JsonBody.open()
+                .fieldIfPresent("phone_number", phoneNumber)
+                .fieldIfPresent("email_address", emailAddress)
+                .fieldIfPresent("template_id", templateId)
+                .fieldIfPresent("personalisation", personalisation)
+                .fieldIfPresent("reference", reference)
+                .fieldIfPresent("content", encodedFileData)
+                .fieldIfPresent("postage", postage);
     }
 
     private String readStream(InputStream inputStream) throws IOException {
@@ -593,23 +856,6 @@ public class NotificationClient implements NotificationClientApi {
         return IOUtils.toString(inputStream, UTF_8);
     }
 
-    /**
-     * Set default SSL context for HTTPS connections.
-     * <p/>
-     * This is necessary when client has to use keystore
-     * (eg provide certification for client authentication).
-     * <p/>
-     * Use case: enterprise proxy requiring HTTPS client authentication
-     */
-    private static void setDefaultSSLContext() throws NoSuchAlgorithmException {
-        HttpsURLConnection.setDefaultSSLSocketFactory(SSLContext.getDefault().getSocketFactory());
-    }
-
-    private static void setCustomSSLContext(final SSLContext sslContext) {
-        HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-    }
-
-
     private static String extractServiceId(String apiKey) {
         return apiKey.substring(Math.max(0, apiKey.length() - 73), Math.max(0, apiKey.length() - 37));
     }
@@ -666,7 +912,7 @@ public class NotificationClient implements NotificationClientApi {
             throw new NotificationClientException("base64EncodedPDFFile is not a PDF");
         }
 
-        JSONObject body = createBodyForPostRequest(null,
+        JsonBody body = createBodyForPostRequest(null,
                 null,
                 null,
                 null,
@@ -674,12 +920,7 @@ public class NotificationClient implements NotificationClientApi {
                 base64EncodedPDFFile,
                 postage);
 
-        HttpURLConnection conn = createConnectionAndSetHeaders(
-                baseUrl + "/v2/notifications/letter",
-                "POST"
-        );
-
-        String response = performPostRequest(conn, body, HttpsURLConnection.HTTP_CREATED);
+        String response = performSendRequest(baseUrl + "/v2/notifications/letter", body);
         return new LetterResponse(response);
 
     }
@@ -703,13 +944,56 @@ public class NotificationClient implements NotificationClientApi {
         {
             throw new NotificationClientException("File cannot be null");
         }
-        byte[] buf;
-        try {
-            buf = FileUtils.readFileToByteArray(precompiledPDF);
+        return sendPrecompiledLetter(reference, precompiledPDF.toPath(), postage);
+    }
+
+    /**
+     * As {@link #sendPrecompiledLetter(String, File)}, with the PDF read from a <code>Path</code>.
+     */
+    public LetterResponse sendPrecompiledLetter(String reference, Path precompiledPDF) throws NotificationClientException {
+        return sendPrecompiledLetter(reference, precompiledPDF, null);
+    }
+
+    /**
+     * As {@link #sendPrecompiledLetter(String, File, String)}, with the PDF read from a <code>Path</code>.
+     * <p>
+     * The file is base64 encoded as it is written to the connection, a chunk at a time, so sending a large PDF
+     * does not need memory in proportion to its size.
+     */
+    public LetterResponse sendPrecompiledLetter(String reference, Path precompiledPDF, String postage) throws NotificationClientException {
+        if (precompiledPDF == null)
+        {
+            throw new NotificationClientException("File cannot be null");
+        }
+        long size;
+        boolean isPDF;
+        try (InputStream in = Files.newInputStream(precompiledPDF)) {
+            size = Files.size(precompiledPDF);
+            isPDF = PdfUtils.isPDF(in);
         } catch (IOException e) {
-            throw new NotificationClientException("Can't read file");
+            NotificationClientException cannotRead = new NotificationClientException("Can't read file");
+            cannotRead.initCause(e);
+            throw cannotRead;
+        }
+
+        if( isBlank(reference) )
+        {
+            throw new NotificationClientException("reference cannot be null or empty");
+        }
+
+        if (size == 0)
+        {
+            throw new NotificationClientException("precompiledPDF cannot be null or empty");
+        }
+
+        if (!isPDF)
+        {
+            throw new NotificationClientException("base64EncodedPDFFile is not a PDF");
         }
-        return sendPrecompiledLetterWithInputStream(reference, new ByteArrayInputStream(buf), postage);
+
+        RequestBody body = new PrecompiledLetterBody(reference, precompiledPDF, size, postage);
+        String response = performRequest("POST", baseUrl + "/v2/notifications/letter", body, HttpsURLConnection.HTTP_CREATED, this::readStream, true);
+        return new LetterResponse(response);
     }
 
     @Override
@@ -736,4 +1020,173 @@ public class NotificationClient implements NotificationClientApi {
         return sendPrecompiledLetter(reference, encoded, postage);
     }
 
+    private interface ResponseReader<T> {
+        T read(InputStream body) throws IOException, NotificationClientException;
+    }
+
+    public static final class Builder {
+        private final String apiKey;
+        private String baseUrl = LIVE_BASE_URL;
+        private Proxy proxy;
+        private SSLContext sslContext;
+        private HttpTransport transport;
+        private int tokenReuseSeconds;
+        private int requestsPerMinute;
+        private RateLimiter.Mode rateLimitMode = RateLimiter.Mode.BLOCKING;
+        private RateLimiter rateLimiter;
+        private AdaptiveConcurrencyLimiter concurrencyLimiter;
+        private RetryPolicy retryPolicy = RetryPolicy.none();
+        private RetryPolicy sendRetryPolicy = RetryPolicy.none();
+        private MetricsListener metricsListener;
+        private PersonalisationValidator personalisationValidator;
+        private boolean validatePersonalisation;
+        private boolean lazyNotificationDecoding;
+
+        private Builder(final String apiKey) {
+            this.apiKey = apiKey;
+        }
+
+        /**
+         * @param baseUrl base URL, defaults to https://api.notifications.service.gov.uk
+         */
+        public Builder baseUrl(final String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * @param proxy Proxy used on the http requests. Ignored if a transport is given.
+         */
+        public Builder proxy(final Proxy proxy) {
+            this.proxy = proxy;
+            return this;
+        }
+
+        /**
+         * @param sslContext SSL context for the HTTPS connections, for example one holding a client certificate.
+         *                   It only applies to this client's connections. Ignored if a transport is given.
+         */
+        public Builder sslContext(final SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * @param transport the HTTP stack to send requests with, defaults to a <code>HttpUrlConnectionTransport</code>.
+         *                  The same transport can be shared by several clients; the client never closes it.
+         */
+        public Builder transport(final HttpTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * @param tokenReuseSeconds how long a signed bearer token is reused for before a new one is signed,
+         *                          up to {@link BearerTokenCache#MAX_REUSE_SECONDS}. Defaults to 0, which signs
+         *                          a new token for every request.
+         */
+        public Builder tokenReuseSeconds(final int tokenReuseSeconds) {
+            this.tokenReuseSeconds = tokenReuseSeconds;
+            return this;
+        }
+
+        /**
+         * Paces requests so they stay under Notify's rate limit. All clients for the same service share one
+         * <code>RateLimiter</code>, so they must all ask for the same limit and mode or <code>build()</code> fails
+         * with an <code>IllegalArgumentException</code>.
+         *
+         * @param requestsPerMinute the limit, for example {@link RateLimiter#DEFAULT_REQUESTS_PER_MINUTE}
+         * @param mode              whether requests over the limit wait or fail straight away with a 429
+         */
+        public Builder rateLimit(final int requestsPerMinute, final RateLimiter.Mode mode) {
+            this.requestsPerMinute = requestsPerMinute;
+            this.rateLimitMode = mode;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter a limiter to pace requests with, for example one shared between several API keys
+         */
+        public Builder rateLimiter(final RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Sends wait for a place under the limit, which grows while Notify's latency stays flat and is cut on
+         * 429s, 5xx errors and rising latency. Reads and template previews are not limited.
+         *
+         * @param concurrencyLimiter limits how many sends are in flight at once, for example one shared by every
+         *                           client for the same service. Defaults to none.
+         */
+        public Builder concurrencyLimiter(final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * @param retryPolicy how to retry requests that only read from Notify, such as getting a notification
+         *                    or a template, and template previews. Defaults to {@link RetryPolicy#none()}.
+         */
+        public Builder retryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sends are not retried by default, the same as a client from the constructors. Retrying a send is only safe
+         * when Notify has not processed the first attempt. Pass <code>RetryPolicy.forSends().build()</code> to retry
+         * 429s and connections that could not be made, and nothing else.
+         *
+         * @param sendRetryPolicy how to retry requests that send a notification or upload something
+         */
+        public Builder sendRetryPolicy(final RetryPolicy sendRetryPolicy) {
+            this.sendRetryPolicy = sendRetryPolicy;
+            return this;
+        }
+
+        /**
+         * @param metricsListener told the endpoint, status, sizes and timings of every request, for example a
+         *                        <code>HistogramMetricsListener</code>. Defaults to none.
+         */
+        public Builder metricsListener(final MetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * Checks the personalisation of every <code>sendEmail</code>, <code>sendSms</code> and
+         * <code>sendLetter</code> against the template's placeholders before sending, so a missing value fails
+         * with a 400 without a request to Notify. Templates are fetched through this client and cached with the
+         * defaults of <code>TemplateCache</code>. Defaults to off.
+         */
+        public Builder validatePersonalisation(final boolean validatePersonalisation) {
+            this.validatePersonalisation = validatePersonalisation;
+            return this;
+        }
+
+        /**
+         * @param personalisationValidator checks the personalisation of every send before it is made, for example
+         *                                 with a <code>TemplateCache</code> shared by several clients
+         */
+        public Builder personalisationValidator(final PersonalisationValidator personalisationValidator) {
+            this.personalisationValidator = personalisationValidator;
+            return this;
+        }
+
+        /**
+         * Has <code>getNotificationById</code>, <code>getNotifications</code> and <code>streamNotifications</code>
+         * return notifications that decode each field, such as parsing its dates and ids, the first time it is
+         * read. Callers that only read a few fields, such as the id and status when polling, skip decoding the
+         * rest. A malformed field then fails when it is read instead of when the response is parsed. Defaults to off.
+         */
+        public Builder lazyNotificationDecoding(final boolean lazyNotificationDecoding) {
+            this.lazyNotificationDecoding = lazyNotificationDecoding;
+            return this;
+        }
+
+        public NotificationClient build() {
+            return new NotificationClient(this);
+        }
+    }
 }
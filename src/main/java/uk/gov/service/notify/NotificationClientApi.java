@@ -2,9 +2,15 @@ package uk.gov.service.notify;
 
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public interface NotificationClientApi {
 
@@ -189,6 +195,49 @@ public interface NotificationClientApi {
      */
     byte[] getPdfForLetter(String notificationId) throws NotificationClientException;
 
+    /**
+     * The getPdfForLetter method will write the PDF contents of a given letter notification to a stream.
+     * <code>NotificationClient</code> copies the PDF to the stream as it is read from the response, so memory use
+     * does not grow with the size of the letter. Once any of the PDF has been written to the stream the request is
+     * not retried, as a second attempt would write it again after the first part, so prefer the <code>Path</code>
+     * variant if reads are retried. A failure to write to the stream is never retried.
+     *
+     * @param notificationId The id of the notification.
+     * @param out Receives the raw pdf data. It is not closed.
+     * @return the number of bytes written
+     * @throws NotificationClientException see https://docs.notifications.service.gov.uk/java.html#get-a-pdf-for-a-letter-notification-error-codes
+     */
+    default long getPdfForLetter(String notificationId, OutputStream out) throws NotificationClientException {
+        byte[] pdf = getPdfForLetter(notificationId);
+        try {
+            out.write(pdf);
+        } catch (IOException e) {
+            throw new NotificationClientException(e).doNotRetry();
+        }
+        return pdf.length;
+    }
+
+    /**
+     * The getPdfForLetter method will save the PDF contents of a given letter notification to a file, replacing it if it exists.
+     * <code>NotificationClient</code> copies the PDF to the file as it is read from the response, so memory use does
+     * not grow with the size of the letter, and writes the file again from the start if the request is retried.
+     * A failure to open or write the file is never retried.
+     *
+     * @param notificationId The id of the notification.
+     * @param destination The file to write the raw pdf data to.
+     * @return the number of bytes written
+     * @throws NotificationClientException see https://docs.notifications.service.gov.uk/java.html#get-a-pdf-for-a-letter-notification-error-codes
+     */
+    default long getPdfForLetter(String notificationId, Path destination) throws NotificationClientException {
+        byte[] pdf = getPdfForLetter(notificationId);
+        try {
+            Files.write(destination, pdf);
+        } catch (IOException e) {
+            throw new NotificationClientException(e).doNotRetry();
+        }
+        return pdf.length;
+    }
+
     /**
      * The getNotifications method will create a GET HTTPS request to retrieve all the notifications.
      *
@@ -203,6 +252,36 @@ public interface NotificationClientApi {
      */
     NotificationList getNotifications(String status, String notification_type, String reference, String olderThanId) throws NotificationClientException;
 
+    /**
+     * The streamNotifications method returns every notification matching the filters, newest first, following
+     * the pages of <code>getNotifications</code> lazily and fetching each next page in the background.
+     * Close the stream if you stop reading before the end.
+     *
+     * @param status If status is not empty or null only notifications with the given status are returned.
+     * @param notification_type If notification_type is not empty or null only notifications of the given type are returned.
+     * @param reference If reference is not empty or null only the notifications with that reference are returned.
+     * @return <code>Stream</code> of <code>Notification</code>, which throws <code>UncheckedNotificationClientException</code> if a page cannot be fetched
+     */
+    default Stream<Notification> streamNotifications(String status, String notification_type, String reference) {
+        return new NotificationIterator(this, status, notification_type, reference).stream();
+    }
+
+    /**
+     * The streamNotifications method returns every notification matching the filters, newest first, following
+     * the pages of <code>getNotifications</code> lazily and fetching each next page in the background.
+     * Close the stream if you stop reading before the end.
+     *
+     * @param status If status is not empty or null only notifications with the given status are returned.
+     * @param notification_type If notification_type is not empty or null only notifications of the given type are returned.
+     * @param reference If reference is not empty or null only the notifications with that reference are returned.
+     * @param olderThanId If olderThanId is not empty or null only the notifications older than that notification id are returned.
+     * @param prefetchExecutor Fetches the next page while the current one is read.
+     * @return <code>Stream</code> of <code>Notification</code>, which throws <code>UncheckedNotificationClientException</code> if a page cannot be fetched
+     */
+    default Stream<Notification> streamNotifications(String status, String notification_type, String reference, String olderThanId, Executor prefetchExecutor) {
+        return new NotificationIterator(this, status, notification_type, reference, olderThanId, prefetchExecutor).stream();
+    }
+
     /**
      * The getTemplateById returns a <code>Template</code> given the template id.
      *
@@ -4,6 +4,8 @@ public class NotificationClientException extends Exception
 {
     private static final long serialVersionUID = 2L;
     private int httpResult;
+    private boolean doNotRetry;
+    private long retryAfterMillis;
 
     public NotificationClientException(Exception ex)
     {
@@ -31,4 +33,32 @@ public class NotificationClientException extends Exception
     {
         return this.httpResult;
     }
+
+    /**
+     * Marks a failure that trying the request again cannot put right, so that no <code>RetryPolicy</code> retries it.
+     */
+    NotificationClientException doNotRetry()
+    {
+        this.doNotRetry = true;
+        return this;
+    }
+
+    boolean isRetryable()
+    {
+        return !this.doNotRetry;
+    }
+
+    NotificationClientException retryAfter(long retryAfterMillis)
+    {
+        this.retryAfterMillis = retryAfterMillis;
+        return this;
+    }
+
+    /**
+     * @return how long Notify asked for the request not to be retried, from a <code>Retry-After</code> header, or 0
+     */
+    long getRetryAfterMillis()
+    {
+        return this.retryAfterMillis;
+    }
 }
@@ -0,0 +1,196 @@
+package uk.gov.service.notify;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URIBuilder;
+
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over every notification matching a <code>getNotifications</code> query, newest first, fetching
+ * pages as they are needed.
+ * <p>
+ * While one page is being read, the next is fetched in the background. At most two pages are held at once and
+ * each is dropped as soon as its last notification has been returned, so memory use does not grow with the number
+ * of notifications scanned.
+ * <p>
+ * A failed request is thrown from <code>hasNext</code> or <code>next</code> as an
+ * <code>UncheckedNotificationClientException</code>. Close the iterator if you stop before the end, so a prefetch
+ * in progress is abandoned. Like other iterators it is not thread safe.
+ */
+public class NotificationIterator implements Iterator<Notification>, AutoCloseable {
+
+    private static final int DEFAULT_PREFETCH_THREADS = 4;
+    private static final ExecutorService DEFAULT_PREFETCH_EXECUTOR = DaemonThreadFactory.newPool("notify-notification-prefetch-", DEFAULT_PREFETCH_THREADS);
+
+    private final NotificationClientApi client;
+    private final String status;
+    private final String notificationType;
+    private final String reference;
+    private final Executor prefetchExecutor;
+
+    private String firstOlderThanId;
+    private boolean started;
+    private boolean closed;
+    private Iterator<Notification> page;
+    private CompletableFuture<NotificationList> nextPage;
+
+    /**
+     * @param client           the client to fetch pages with
+     * @param status           only return notifications with this status, or null for all
+     * @param notificationType only return notifications of this type, or null for all
+     * @param reference        only return notifications with this reference, or null for all
+     */
+    public NotificationIterator(final NotificationClientApi client,
+                                final String status,
+                                final String notificationType,
+                                final String reference) {
+        this(client, status, notificationType, reference, null, DEFAULT_PREFETCH_EXECUTOR);
+    }
+
+    /**
+     * @param client           the client to fetch pages with
+     * @param status           only return notifications with this status, or null for all
+     * @param notificationType only return notifications of this type, or null for all
+     * @param reference        only return notifications with this reference, or null for all
+     * @param olderThanId      start after this notification, or null to start with the newest
+     * @param prefetchExecutor fetches the next page in the background
+     */
+    public NotificationIterator(final NotificationClientApi client,
+                                final String status,
+                                final String notificationType,
+                                final String reference,
+                                final String olderThanId,
+                                final Executor prefetchExecutor) {
+        this.client = client;
+        this.status = status;
+        this.notificationType = notificationType;
+        this.reference = reference;
+        this.firstOlderThanId = olderThanId;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!started) {
+            started = true;
+            nextPage = fetch(firstOlderThanId);
+            firstOlderThanId = null;
+        }
+        while (page == null || !page.hasNext()) {
+            page = null;
+            if (closed || nextPage == null) {
+                return false;
+            }
+            NotificationList list = await(nextPage);
+            page = list.getNotifications().iterator();
+            String olderThanId = olderThanId(list);
+            nextPage = olderThanId == null ? null : fetch(olderThanId);
+        }
+        return true;
+    }
+
+    @Override
+    public Notification next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    /**
+     * @return a sequential <code>Stream</code> over the remaining notifications that closes this iterator when closed
+     */
+    public Stream<Notification> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Stops iterating and abandons any page being fetched.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        page = null;
+        if (nextPage != null) {
+            nextPage.cancel(false);
+            nextPage = null;
+        }
+    }
+
+    /**
+     * Each iterator has at most one page in flight, so a few daemon threads serve any number of iterators, with
+     * further prefetches queued behind them. The threads exit once they have been idle for a minute.
+     */
+    private CompletableFuture<NotificationList> fetch(final String olderThanId) {
+        CompletableFuture<NotificationList> future = new CompletableFuture<>();
+        try {
+            prefetchExecutor.execute(() -> {
+                if (future.isCancelled()) {
+                    return;
+                }
+                try {
+                    future.complete(client.getNotifications(status, notificationType, reference, olderThanId));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static NotificationList await(final CompletableFuture<NotificationList> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedNotificationClientException(new NotificationClientException("Interrupted while waiting for a page of notifications", e));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof NotificationClientException) {
+                throw new UncheckedNotificationClientException((NotificationClientException) cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new UncheckedNotificationClientException(new NotificationClientException("Failed to fetch a page of notifications", cause));
+        }
+    }
+
+    /**
+     * @return the id to fetch the following page with, or null if this was the last page
+     */
+    static String olderThanId(final NotificationList list) {
+        List<Notification> notifications = list.getNotifications();
+        if (!list.getNextPageLink().isPresent() || notifications.isEmpty()) {
+            return null;
+        }
+        try {
+            for (NameValuePair parameter : new URIBuilder(list.getNextPageLink().get()).getQueryParams()) {
+                if (parameter.getName().equals("older_than")) {
+                    return parameter.getValue();
+                }
+            }
+        } catch (URISyntaxException e) {
+            // fall back to the oldest notification on the page, which is what the link points after
+        }
+        return notifications.get(notifications.size() - 1).getId().toString();
+    }
+}
@@ -1,11 +1,17 @@
 package uk.gov.service.notify;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.json.JSONObject;
 import org.json.JSONArray;
+import org.json.JSONTokener;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class NotificationList {
     private final List<Notification> notifications;
@@ -39,6 +45,109 @@ public class NotificationList {
         }
     }
 
+    NotificationList(List<Notification> notifications, String currentPageLink, String nextPageLink) {
+        this.notifications = notifications;
+        this.currentPageLink = currentPageLink;
+        this.nextPageLink = nextPageLink;
+    }
+
+    /**
+     * Reads a page of notifications straight from a response body, handing each notification to the consumer as
+     * soon as it has been read. Only one notification is held in memory at a time, rather than the whole body
+     * as a <code>String</code> and a tree of every notification in it.
+     *
+     * @return a <code>NotificationList</code> holding the page links only; its list of notifications is empty
+     */
+    static NotificationList parse(InputStream body, Consumer<Notification> consumer) {
+        return parse(body, consumer, false);
+    }
+
+    /**
+     * @param lazy true to decode each field of a notification when it is first read
+     * @see #parse(InputStream, Consumer)
+     */
+    static NotificationList parse(InputStream body, Consumer<Notification> consumer, boolean lazy) {
+        JSONTokener tokener = new JSONTokener(new InputStreamReader(body, UTF_8));
+        String currentPageLink = null;
+        String nextPageLink = null;
+        expect(tokener, '{');
+        if (tokener.nextClean() != '}') {
+            tokener.back();
+            do {
+                String key = readKey(tokener);
+                if (key.equals("notifications")) {
+                    readNotifications(tokener, consumer, lazy);
+                } else if (key.equals("links")) {
+                    JSONObject links = (JSONObject) tokener.nextValue();
+                    currentPageLink = links.getString("current");
+                    nextPageLink = links.isNull("next") ? null : links.getString("next");
+                } else {
+                    tokener.nextValue();
+                }
+            } while (nextSeparator(tokener, '}'));
+        }
+        if (currentPageLink == null) {
+            throw tokener.syntaxError("JSONObject[\"links\"] not found.");
+        }
+        return new NotificationList(new ArrayList<>(), currentPageLink, nextPageLink);
+    }
+
+    /**
+     * @see #parse(InputStream, Consumer)
+     */
+    static NotificationList parse(InputStream body) {
+        return parse(body, false);
+    }
+
+    /**
+     * @param lazy true to decode each field of a notification when it is first read
+     * @see #parse(InputStream, Consumer)
+     */
+    static NotificationList parse(InputStream body, boolean lazy) {
+        List<Notification> notifications = new ArrayList<>();
+        NotificationList links = parse(body, notifications::add, lazy);
+        return new NotificationList(notifications, links.currentPageLink, links.nextPageLink);
+    }
+
+    private static void readNotifications(JSONTokener tokener, Consumer<Notification> consumer, boolean lazy) {
+        expect(tokener, '[');
+        if (tokener.nextClean() == ']') {
+            return;
+        }
+        tokener.back();
+        do {
+            Object value = tokener.nextValue();
+            if (!(value instanceof JSONObject)) {
+                throw tokener.syntaxError("Expected a notification object");
+            }
+            consumer.accept(new Notification((JSONObject) value, lazy));
+        } while (nextSeparator(tokener, ']'));
+    }
+
+    private static String readKey(JSONTokener tokener) {
+        expect(tokener, '"');
+        String key = tokener.nextString('"');
+        expect(tokener, ':');
+        return key;
+    }
+
+    private static boolean nextSeparator(JSONTokener tokener, char end) {
+        char c = tokener.nextClean();
+        if (c == ',') {
+            return true;
+        }
+        if (c == end) {
+            return false;
+        }
+        throw tokener.syntaxError("Expected a ',' or '" + end + "'");
+    }
+
+    private static void expect(JSONTokener tokener, char expected) {
+        if (tokener.nextClean() != expected) {
+            throw tokener.syntaxError("Expected '" + expected + "'");
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder notifications_string = new StringBuilder("\n");
@@ -1,13 +1,25 @@
 package uk.gov.service.notify;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Base64;
-import java.util.Scanner;
 
 public class PdfUtils
 {
     /**
-     * A method to determine if a file is a pdf file
+     * The number of bytes at the start of a file that are checked for the <code>%PDF-</code> header.
+     * PDF readers accept a header anywhere in the first 1024 bytes.
+     */
+    public static final int HEADER_SCAN_WINDOW = 1024;
+
+    private static final byte[] PDF_MARKER = {'%', 'P', 'D', 'F', '-'};
+    // the number of base64 characters that encode the scan window, a multiple of 4 so it decodes on its own
+    private static final int ENCODED_SCAN_WINDOW = (HEADER_SCAN_WINDOW + 2) / 3 * 4;
+
+    /**
+     * A method to determine if a file is a pdf file. Only the characters that encode the first
+     * {@link #HEADER_SCAN_WINDOW} bytes are decoded, however long the string is.
      *
      * @param base64String A base64 encoded string containing a PDF file to send via the API
      *
@@ -16,19 +28,62 @@ public class PdfUtils
      */
     public static boolean isBase64StringPDF(String base64String)
     {
-        byte[] decoded = Base64.getDecoder().decode(base64String);
+        String header = base64String.length() > ENCODED_SCAN_WINDOW
+                ? base64String.substring(0, ENCODED_SCAN_WINDOW)
+                : base64String;
+        byte[] decoded = Base64.getDecoder().decode(header);
+
+        return hasHeader(decoded, Math.min(decoded.length, HEADER_SCAN_WINDOW));
+    }
+
+    /**
+     * A method to determine if a stream holds a pdf file. At most {@link #HEADER_SCAN_WINDOW} bytes are read.
+     *
+     * @param input The contents of the file, which is read but not closed
+     *
+     * @return True if the file is a PDF, otherwise false
+     *
+     * @throws IOException if the stream could not be read
+     */
+    public static boolean isPDF(InputStream input) throws IOException
+    {
+        byte[] header = new byte[HEADER_SCAN_WINDOW];
+        int length = 0;
+        int read;
+        while (length < header.length && (read = input.read(header, length, header.length - length)) != -1)
+        {
+            length += read;
+        }
 
-        Scanner input = new Scanner(new ByteArrayInputStream(decoded));
+        return hasHeader(header, length);
+    }
 
-        return isPDF(input);
+    /**
+     * A method to determine if a buffer holds a pdf file. At most {@link #HEADER_SCAN_WINDOW} bytes from its
+     * position are checked, and its position is not changed.
+     *
+     * @param buffer The contents of the file, from its position to its limit
+     *
+     * @return True if the file is a PDF, otherwise false
+     */
+    public static boolean isPDF(ByteBuffer buffer)
+    {
+        byte[] header = new byte[Math.min(buffer.remaining(), HEADER_SCAN_WINDOW)];
+        buffer.duplicate().get(header);
+
+        return hasHeader(header, header.length);
     }
 
-    private static boolean isPDF(Scanner input)
+    private static boolean hasHeader(byte[] header, int length)
     {
-        while (input.hasNextLine())
+        for (int start = 0; start <= length - PDF_MARKER.length; start++)
         {
-            final String checkLine = input.nextLine();
-            if(checkLine.contains("%PDF-"))
+            int matched = 0;
+            while (matched < PDF_MARKER.length && header[start + matched] == PDF_MARKER[matched])
+            {
+                matched++;
+            }
+            if (matched == PDF_MARKER.length)
             {
                 return true;
             }
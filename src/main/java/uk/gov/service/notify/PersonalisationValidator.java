@@ -0,0 +1,57 @@
+package uk.gov.service.notify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks, before a send is made, that the personalisation has a value for every placeholder in the template, so a
+ * missing value fails straight away instead of costing a request to Notify and a 400 in return.
+ * <p>
+ * Templates come from a <code>TemplateCache</code>, and each one's placeholders are compiled once into a
+ * <code>TemplateRenderer</code> that is kept for as long as the template stays cached. After the first send with a
+ * template, checking is a few map lookups.
+ * <p>
+ * If the template cannot be fetched, the send goes ahead unchecked, and Notify validates it as usual.
+ */
+public class PersonalisationValidator {
+
+    private static final Logger LOGGER = Logger.getLogger(PersonalisationValidator.class.getName());
+
+    private final TemplateCache templateCache;
+    // Keyed by the cached Template instance, so an entry goes when its template is evicted or refreshed
+    private final Map<Template, TemplateRenderer> compiled = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * @param templateCache gets the latest version of each template
+     */
+    public PersonalisationValidator(final TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    /**
+     * @throws NotificationClientException with status code 400, as Notify would give, if the personalisation has no
+     *                                     value for one of the template's placeholders
+     */
+    public void validate(final String templateId, final Map<String, ?> personalisation) throws NotificationClientException {
+        Template template;
+        try {
+            template = templateCache.getTemplateById(templateId);
+        } catch (NotificationClientException e) {
+            LOGGER.log(Level.FINE, "Could not get template " + templateId + " to check its personalisation", e);
+            return;
+        }
+        List<String> missing = compiled.computeIfAbsent(template, TemplateRenderer::compile)
+                .getMissingPersonalisation(personalisation);
+        if (!missing.isEmpty()) {
+            throw new NotificationClientException(400, "Missing personalisation: " + String.join(", ", missing));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package uk.gov.service.notify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The body of a precompiled letter request, with the PDF read from a file and base64 encoded as it is written to
+ * the connection. Only a fixed-size chunk of the file is in memory at once, however large it is.
+ * <p>
+ * The encoded length follows from the file's size, so the length of the whole body is known up front. If the file
+ * changes size while it is being sent the request fails.
+ */
+final class PrecompiledLetterBody implements RequestBody {
+
+    private final Path pdf;
+    private final long size;
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    PrecompiledLetterBody(final String reference, final Path pdf, final long size, final String postage) {
+        this.pdf = pdf;
+        this.size = size;
+        byte[] json;
+        try (JsonBody body = JsonBody.open()
+                .fieldIfPresent("reference", reference)
+                .fieldIfPresent("postage", postage)
+                .field("content", "")) {
+            json = body.toByteArray();
+        }
+        // the body ends with "content":""} so the encoded PDF goes before the last two bytes
+        this.prefix = Arrays.copyOf(json, json.length - 2);
+        this.suffix = Arrays.copyOfRange(json, json.length - 2, json.length);
+    }
+
+    @Override
+    public long contentLength() {
+        return prefix.length + Base64Writer.encodedLength(size) + suffix.length;
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(prefix);
+        try (InputStream in = Files.newInputStream(pdf)) {
+            Base64Writer.write(in, size, out, pdf);
+        }
+        out.write(suffix);
+    }
+}
@@ -0,0 +1,188 @@
+package uk.gov.service.notify;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A token bucket that keeps requests to the Notify API under its rate limit, so that bursts are smoothed
+ * out on the client instead of being rejected with a 429.
+ * <p>
+ * Notify applies its limit per service, so limiters are shared: every client created with an API key for the
+ * same service uses the same bucket (see {@link #forService(String, int, Mode)}). The bucket starts full, holds up
+ * to one second's worth of requests, and refills continuously.
+ * <p>
+ * In {@link Mode#BLOCKING} mode a request that finds the bucket empty waits for its turn. In
+ * {@link Mode#FAIL_FAST} mode it is rejected straight away with a <code>NotificationClientException</code>
+ * with status code 429, without anything being sent to Notify. That rejection is never retried by a
+ * <code>RetryPolicy</code>, as a retry would only queue up behind the limit that fail-fast mode is there to avoid.
+ */
+public class RateLimiter {
+
+    /**
+     * Notify's default rate limit, in requests per minute.
+     */
+    public static final int DEFAULT_REQUESTS_PER_MINUTE = 3000;
+
+    private static final ConcurrentMap<String, RateLimiter> SHARED = new ConcurrentHashMap<>();
+
+    public enum Mode {
+        /** Wait until the request can be sent within the limit. */
+        BLOCKING,
+        /** Reject the request with a 429 if it cannot be sent straight away. */
+        FAIL_FAST
+    }
+
+    private final int requestsPerMinute;
+    private final Mode mode;
+    private final long nanosPerPermit;
+    private final long burstToleranceNanos;
+    private final NanoClock clock;
+    // GCRA theoretical arrival time: a request goes straight through while this is at most burstToleranceNanos ahead of now
+    private final AtomicLong theoreticalArrivalNanos;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param requestsPerMinute the number of requests allowed per minute
+     * @param mode              whether to wait for or reject requests over the limit
+     */
+    public RateLimiter(int requestsPerMinute, Mode mode) {
+        this(requestsPerMinute, mode, System::nanoTime);
+    }
+
+    RateLimiter(int requestsPerMinute, Mode mode, NanoClock clock) {
+        if (requestsPerMinute < 1) {
+            throw new IllegalArgumentException("requestsPerMinute must be at least 1");
+        }
+        this.requestsPerMinute = requestsPerMinute;
+        this.mode = mode;
+        this.nanosPerPermit = TimeUnit.MINUTES.toNanos(1) / requestsPerMinute;
+        this.burstToleranceNanos = Math.max(0, TimeUnit.SECONDS.toNanos(1) - nanosPerPermit);
+        this.clock = clock;
+        this.theoreticalArrivalNanos = new AtomicLong(clock.nanoTime());
+    }
+
+    /**
+     * @return the limiter shared by every client of the given service
+     * @throws IllegalArgumentException if the service already has a limiter with a different limit or mode, as
+     *                                  two buckets for one service would let through more than Notify's limit
+     */
+    public static RateLimiter forService(String serviceId, int requestsPerMinute, Mode mode) {
+        RateLimiter limiter = SHARED.computeIfAbsent(serviceId, key -> new RateLimiter(requestsPerMinute, mode));
+        if (limiter.requestsPerMinute != requestsPerMinute || limiter.mode != mode) {
+            throw new IllegalArgumentException("Service " + serviceId + " already has a rate limit of "
+                    + limiter.requestsPerMinute + " requests per minute in " + limiter.mode + " mode");
+        }
+        return limiter;
+    }
+
+    /**
+     * Takes a permit for one request, waiting for one to become free in <code>BLOCKING</code> mode.
+     *
+     * @return the time spent waiting, in nanoseconds
+     * @throws NotificationClientException with status code 429 in <code>FAIL_FAST</code> mode if no permit is free,
+     *                                     or if the thread is interrupted while waiting, in which case the permit
+     *                                     is given back
+     */
+    public long acquire() throws NotificationClientException {
+        long now = clock.nanoTime();
+        long wait;
+        while (true) {
+            long arrival = theoreticalArrivalNanos.get();
+            long start = Math.max(arrival, now);
+            wait = start - now - burstToleranceNanos;
+            if (wait > 0 && mode == Mode.FAIL_FAST) {
+                rejected.increment();
+                throw new NotificationClientException(429, "Client-side rate limit of " + requestsPerMinute + " requests per minute exceeded").doNotRetry();
+            }
+            if (theoreticalArrivalNanos.compareAndSet(arrival, start + nanosPerPermit)) {
+                break;
+            }
+        }
+
+        acquired.increment();
+        if (wait <= 0) {
+            return 0;
+        }
+        delayed.increment();
+        waitNanos.add(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        try {
+            sleep(wait);
+        } catch (NotificationClientException e) {
+            // the request will not be sent, so free its place for the next one
+            theoreticalArrivalNanos.addAndGet(-nanosPerPermit);
+            acquired.decrement();
+            throw e;
+        }
+        return wait;
+    }
+
+    private void sleep(long nanos) throws NotificationClientException {
+        long deadline = clock.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new NotificationClientException("Interrupted while waiting for the client-side rate limit");
+            }
+            remaining = deadline - clock.nanoTime();
+        }
+    }
+
+    public int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the number of requests let through
+     */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * @return the number of requests that had to wait for a permit
+     */
+    public long getDelayedCount() {
+        return delayed.sum();
+    }
+
+    /**
+     * @return the number of requests rejected in <code>FAIL_FAST</code> mode
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the total time requests have spent waiting for a permit, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * @return the longest time a single request has waited for a permit, in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    interface NanoClock {
+        long nanoTime();
+    }
+}
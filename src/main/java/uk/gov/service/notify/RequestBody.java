@@ -0,0 +1,37 @@
+package uk.gov.service.notify;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The body of a request sent through a <code>HttpTransport</code>.
+ */
+public interface RequestBody {
+
+    /**
+     * @return the number of bytes {@link #writeTo(OutputStream)} will write, or -1 if it is not known up front
+     */
+    long contentLength();
+
+    /**
+     * Writes the body to the connection. May be called more than once if the request is retried.
+     *
+     * @param out the stream to write the body to, which must not be closed by this method
+     * @throws IOException if the body could not be written
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    static RequestBody of(final byte[] content) {
+        return new RequestBody() {
+            @Override
+            public long contentLength() {
+                return content.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(content);
+            }
+        };
+    }
+}
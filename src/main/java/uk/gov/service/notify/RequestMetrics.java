@@ -0,0 +1,167 @@
+package uk.gov.service.notify;
+
+/**
+ * The measurements of one request to the Notify API.
+ */
+public final class RequestMetrics {
+
+    private final String method;
+    private final String endpoint;
+    private final int statusCode;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long queueWaitNanos;
+    private final long signingNanos;
+    private final long connectNanos;
+    private final long parseNanos;
+    private final long latencyNanos;
+
+    RequestMetrics(String method,
+                   String endpoint,
+                   int statusCode,
+                   long bytesSent,
+                   long bytesReceived,
+                   long queueWaitNanos,
+                   long signingNanos,
+                   long connectNanos,
+                   long parseNanos,
+                   long latencyNanos) {
+        this.method = method;
+        this.endpoint = endpoint;
+        this.statusCode = statusCode;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.queueWaitNanos = queueWaitNanos;
+        this.signingNanos = signingNanos;
+        this.connectNanos = connectNanos;
+        this.parseNanos = parseNanos;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the path requested with ids replaced by placeholders, for example <code>/v2/template/{id}/version/{version}</code>,
+     * so it can be used as a metric label
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the HTTP status code, or 0 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true if a response was received with a 2xx status code
+     */
+    public boolean isSuccess() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * @return the size of the request body, or -1 if it was not known in advance
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of bytes of response body the client read
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return how long the request waited on the client side before it was sent: for a place under the
+     * <code>AdaptiveConcurrencyLimiter</code> if it is a send, plus for the <code>RateLimiter</code>'s permit
+     */
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    /**
+     * @return how long it took to get the bearer token, which is near zero when a cached token was reused
+     */
+    public long getSigningNanos() {
+        return signingNanos;
+    }
+
+    /**
+     * @return how long it took to get a connection, or -1 if the transport does not measure it
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * @return how long it took to read and parse the response body, or -1 if the request failed before it was parsed
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @return the time from the start of the request, including any wait on the client side, until its response had been read
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @param url a request URL
+     * @return its path with ids replaced by placeholders
+     */
+    static String endpointOf(String url) {
+        int scheme = url.indexOf("://");
+        int start = scheme < 0 ? 0 : url.indexOf('/', scheme + 3);
+        if (start < 0) {
+            return "/";
+        }
+        int query = url.indexOf('?', start);
+        String path = query < 0 ? url.substring(start) : url.substring(start, query);
+        String[] segments = path.split("/", -1);
+        StringBuilder endpoint = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                endpoint.append('/');
+            }
+            String previous = i > 0 ? segments[i - 1] : "";
+            String segment = segments[i];
+            if (previous.equals("template") || (previous.equals("notifications") && !isNotificationType(segment))) {
+                endpoint.append("{id}");
+            } else if (previous.equals("version")) {
+                endpoint.append("{version}");
+            } else {
+                endpoint.append(segment);
+            }
+        }
+        return endpoint.toString();
+    }
+
+    private static boolean isNotificationType(String segment) {
+        return segment.equals("email") || segment.equals("sms") || segment.equals("letter") || segment.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMetrics{" +
+                "method='" + method + '\'' +
+                ", endpoint='" + endpoint + '\'' +
+                ", statusCode=" + statusCode +
+                ", bytesSent=" + bytesSent +
+                ", bytesReceived=" + bytesReceived +
+                ", queueWaitNanos=" + queueWaitNanos +
+                ", signingNanos=" + signingNanos +
+                ", connectNanos=" + connectNanos +
+                ", parseNanos=" + parseNanos +
+                ", latencyNanos=" + latencyNanos +
+                '}';
+    }
+}
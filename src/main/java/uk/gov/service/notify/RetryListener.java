@@ -0,0 +1,26 @@
+package uk.gov.service.notify;
+
+/**
+ * Told about retries made under a <code>RetryPolicy</code>, for example to count them in your metrics.
+ */
+public interface RetryListener {
+
+    /**
+     * Called before waiting to retry a failed attempt.
+     *
+     * @param attempt     the attempt that failed, starting at 1
+     * @param failure     why it failed
+     * @param delayMillis how long the client will wait before the next attempt
+     */
+    default void onRetry(int attempt, NotificationClientException failure, long delayMillis) {
+    }
+
+    /**
+     * Called once a request has succeeded or the policy has given up on it.
+     *
+     * @param attempts    the number of attempts made, 1 if the first one succeeded
+     * @param lastFailure why the last attempt failed, or null if the request succeeded
+     */
+    default void onComplete(int attempts, NotificationClientException lastFailure) {
+    }
+}
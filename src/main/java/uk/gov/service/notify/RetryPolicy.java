@@ -0,0 +1,251 @@
+package uk.gov.service.notify;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Decides whether a failed request is tried again, and how long to wait first.
+ * <p>
+ * Delays grow exponentially from the base delay, capped at the maximum delay, with "full jitter": the actual
+ * wait is a random time between zero and that value, so clients that failed together do not retry together.
+ * <p>
+ * A retry budget stops retries from multiplying the load on Notify when it is struggling. Every request adds
+ * a fraction of a token to the budget, up to a cap, and every retry spends a whole token. With the default
+ * ratio of 0.2, retries add at most 20% to the number of requests sent once the initial allowance is used up.
+ * The budget is shared by every request made under the same policy instance.
+ * <p>
+ * When Notify responds with a <code>Retry-After</code> header the retry waits at least that long, and is not made
+ * at all if Notify asks for a longer wait than the maximum delay.
+ */
+public final class RetryPolicy {
+
+    private static final RetryPolicy NONE = builder().maxAttempts(1).build();
+    private static final long BUDGET_UNIT = 1000;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Set<Integer> retryableStatusCodes;
+    private final boolean retryOnConnectionErrors;
+    private final boolean retryOnConnectFailures;
+    private final long budgetPerRequest;
+    private final long budgetCap;
+    private final AtomicLong budget;
+    private final RetryListener listener;
+    private final LongUnaryOperator jitter;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayMillis = builder.baseDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.retryableStatusCodes = new HashSet<>(builder.retryableStatusCodes);
+        this.retryOnConnectionErrors = builder.retryOnConnectionErrors;
+        this.retryOnConnectFailures = builder.retryOnConnectFailures;
+        this.budgetPerRequest = Math.round(builder.budgetRatio * BUDGET_UNIT);
+        this.budgetCap = (long) builder.budgetBurst * BUDGET_UNIT;
+        this.budget = new AtomicLong(budgetCap);
+        this.listener = builder.listener;
+        this.jitter = builder.jitter;
+    }
+
+    /**
+     * @return a policy that never retries
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A send can only be retried safely if Notify never acted on the first attempt, which is true of a 429, and of
+     * a connection that could not be made so the request was never sent. Other failures, such as a 5xx or a
+     * connection that broke while waiting for the response, may come after the notification was accepted, so
+     * retrying them could send it twice.
+     *
+     * @return a builder that retries only those two failures, to pass to <code>NotificationClient.Builder#sendRetryPolicy</code>
+     */
+    public static Builder forSends() {
+        return new Builder().retryOn(429).retryOnConnectionErrors(false);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public RetryListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the number of retries the budget currently allows
+     */
+    public long getAvailableBudget() {
+        return budget.get() / BUDGET_UNIT;
+    }
+
+    /**
+     * Called once for every request made under this policy, before its first attempt.
+     */
+    void recordRequest() {
+        if (maxAttempts > 1) {
+            budget.accumulateAndGet(budgetPerRequest, (current, add) -> Math.min(budgetCap, current + add));
+        }
+    }
+
+    /**
+     * @param attempt the attempt that has just failed, starting at 1
+     * @param failure why it failed
+     * @return how long to wait before trying again, or -1 if the request should not be retried
+     */
+    long retryDelayMillis(int attempt, NotificationClientException failure) {
+        long retryAfterMillis = failure.getRetryAfterMillis();
+        if (attempt >= maxAttempts || !isRetryable(failure) || retryAfterMillis > maxDelayMillis || !spendBudget()) {
+            return -1;
+        }
+        long ceiling = baseDelayMillis << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        return Math.max(retryAfterMillis, jitter.applyAsLong(ceiling));
+    }
+
+    private boolean isRetryable(NotificationClientException failure) {
+        if (!failure.isRetryable()) {
+            return false;
+        }
+        if (failure.getCause() instanceof IOException) {
+            return retryOnConnectionErrors || (retryOnConnectFailures && failure.getCause() instanceof ConnectException);
+        }
+        return retryableStatusCodes.contains(failure.getHttpResult());
+    }
+
+    private boolean spendBudget() {
+        while (true) {
+            long current = budget.get();
+            if (current < BUDGET_UNIT) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - BUDGET_UNIT)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", baseDelayMillis=" + baseDelayMillis +
+                ", maxDelayMillis=" + maxDelayMillis +
+                ", retryableStatusCodes=" + retryableStatusCodes +
+                ", retryOnConnectionErrors=" + retryOnConnectionErrors +
+                ", retryOnConnectFailures=" + retryOnConnectFailures +
+                '}';
+    }
+
+    public static final class Builder {
+        private int maxAttempts = 3;
+        private long baseDelayMillis = 100;
+        private long maxDelayMillis = TimeUnit.SECONDS.toMillis(5);
+        private Set<Integer> retryableStatusCodes = new HashSet<>(Arrays.asList(429, 500, 502, 503, 504));
+        private boolean retryOnConnectionErrors = true;
+        private boolean retryOnConnectFailures = true;
+        private double budgetRatio = 0.2;
+        private int budgetBurst = 10;
+        private RetryListener listener = new RetryListener() { };
+        private LongUnaryOperator jitter = ceiling -> ThreadLocalRandom.current().nextLong(ceiling + 1);
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxAttempts the total number of attempts, including the first. Defaults to 3; 1 disables retries.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param baseDelay the upper bound of the first delay, doubled for every further attempt. Defaults to 100ms.
+         */
+        public Builder baseDelay(long baseDelay, TimeUnit unit) {
+            this.baseDelayMillis = unit.toMillis(baseDelay);
+            return this;
+        }
+
+        /**
+         * @param maxDelay the largest delay between two attempts. Defaults to 5 seconds.
+         */
+        public Builder maxDelay(long maxDelay, TimeUnit unit) {
+            this.maxDelayMillis = unit.toMillis(maxDelay);
+            return this;
+        }
+
+        /**
+         * @param statusCodes the HTTP status codes worth retrying. Defaults to 429, 500, 502, 503 and 504.
+         */
+        public Builder retryOn(Integer... statusCodes) {
+            this.retryableStatusCodes = new HashSet<>(Arrays.asList(statusCodes));
+            return this;
+        }
+
+        /**
+         * @param retryOnConnectionErrors whether to retry when no response was received at all. Defaults to true.
+         *                                For sends this can deliver a notification twice, as Notify may have
+         *                                accepted the request before the connection failed.
+         */
+        public Builder retryOnConnectionErrors(boolean retryOnConnectionErrors) {
+            this.retryOnConnectionErrors = retryOnConnectionErrors;
+            return this;
+        }
+
+        /**
+         * @param retryOnConnectFailures whether to retry when a connection to Notify could not be made, so the
+         *                               request was never sent, even if other connection errors are not retried.
+         *                               Transports report these as a <code>java.net.ConnectException</code>.
+         *                               Defaults to true.
+         */
+        public Builder retryOnConnectFailures(boolean retryOnConnectFailures) {
+            this.retryOnConnectFailures = retryOnConnectFailures;
+            return this;
+        }
+
+        /**
+         * @param ratio the retries earned by each request, defaults to 0.2
+         * @param burst the retries allowed before any have been earned, and the most that can be saved up. Defaults to 10.
+         */
+        public Builder retryBudget(double ratio, int burst) {
+            this.budgetRatio = ratio;
+            this.budgetBurst = burst;
+            return this;
+        }
+
+        public Builder listener(RetryListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        Builder jitter(LongUnaryOperator jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
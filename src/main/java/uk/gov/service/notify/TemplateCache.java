@@ -0,0 +1,388 @@
+package uk.gov.service.notify;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps templates fetched with <code>getTemplateById</code> and <code>getTemplateVersion</code> in memory, so that
+ * looking a template up before every send does not cost a request to Notify each time.
+ * <p>
+ * A specific version of a template never changes, so it is kept until it is evicted. The latest version of a
+ * template can change at any time. Once it is older than <code>refreshAfter</code>, the cached copy is still
+ * returned but a fresh one is fetched in the background. Once it is older than <code>expireAfter</code>, callers
+ * wait for a fresh copy instead. When the cache is full, the least recently used template is evicted.
+ * <p>
+ * Concurrent lookups of a template that is not cached wait for a single request to Notify instead of each making
+ * their own. A failed request is not cached, so the next lookup tries again.
+ * <p>
+ * Every caller gets the same <code>Template</code> instance, so do not change it through its setters.
+ */
+public class TemplateCache {
+
+    private static final Logger LOGGER = Logger.getLogger(TemplateCache.class.getName());
+    private static final int DEFAULT_REFRESH_THREADS = 4;
+    private static final ExecutorService DEFAULT_REFRESH_EXECUTOR = DaemonThreadFactory.newPool("notify-template-refresh-", DEFAULT_REFRESH_THREADS);
+    private static final int LATEST = -1;
+
+    private final NotificationClientApi client;
+    private final int maximumSize;
+    private final long refreshAfterMillis;
+    private final long expireAfterMillis;
+    private final Executor refreshExecutor;
+    private final Clock clock;
+    private final Map<Key, CachedTemplate> entries;
+    private final ConcurrentMap<Key, CompletableFuture<Template>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private TemplateCache(final Builder builder, final Clock clock) {
+        if (builder.maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        if (builder.refreshAfterMillis > builder.expireAfterMillis) {
+            throw new IllegalArgumentException("refreshAfter must not be longer than expireAfter");
+        }
+        this.client = builder.client;
+        this.maximumSize = builder.maximumSize;
+        this.refreshAfterMillis = builder.refreshAfterMillis;
+        this.expireAfterMillis = builder.expireAfterMillis;
+        this.refreshExecutor = builder.refreshExecutor;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<Key, CachedTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, CachedTemplate> eldest) {
+                if (size() > maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param client fetches the templates that are not cached
+     */
+    public static Builder builder(final NotificationClientApi client) {
+        return new Builder(client);
+    }
+
+    /**
+     * @return the latest version of the template, from the cache if it was fetched recently enough
+     * @throws NotificationClientException if the template was not cached and could not be fetched
+     */
+    public Template getTemplateById(final String templateId) throws NotificationClientException {
+        return get(new Key(templateId, LATEST));
+    }
+
+    /**
+     * @return the given version of the template, from the cache if it has been fetched before
+     * @throws NotificationClientException if the template was not cached and could not be fetched
+     */
+    public Template getTemplateVersion(final String templateId, final int version) throws NotificationClientException {
+        return get(new Key(templateId, version));
+    }
+
+    /**
+     * Forgets every cached version of the template, for example after it has been edited.
+     */
+    public void invalidate(final String templateId) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.templateId.equals(templateId));
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of template versions currently cached
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the cache, including stale entries returned while they refresh
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to wait for a template to be fetched
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of lookups answered from the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return the number of requests made to Notify, in the foreground or the background
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * @return the number of background refreshes started
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return the number of templates evicted to keep the cache under its maximum size
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Template get(final Key key) throws NotificationClientException {
+        CachedTemplate entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            long age = clock.millis() - entry.loadedAtMillis;
+            if (key.version != LATEST || age < expireAfterMillis) {
+                hits.increment();
+                if (key.version == LATEST && age >= refreshAfterMillis) {
+                    refreshInBackground(key);
+                }
+                return entry.template;
+            }
+        }
+        misses.increment();
+
+        CompletableFuture<Template> created = new CompletableFuture<>();
+        CompletableFuture<Template> existing = loading.putIfAbsent(key, created);
+        if (existing == null) {
+            // a load may have finished between the lookup above and taking its place in loading
+            Template loaded = unexpired(key);
+            if (loaded != null) {
+                loading.remove(key, created);
+                created.complete(loaded);
+                return loaded;
+            }
+            load(key, created);
+        }
+        try {
+            return (existing != null ? existing : created).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof NotificationClientException) {
+                throw (NotificationClientException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the cached template if it has not expired, or null
+     */
+    private Template unexpired(final Key key) {
+        CachedTemplate entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || (key.version == LATEST && clock.millis() - entry.loadedAtMillis >= expireAfterMillis)) {
+            return null;
+        }
+        return entry.template;
+    }
+
+    private void refreshInBackground(final Key key) {
+        CompletableFuture<Template> created = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, created) != null) {
+            return;
+        }
+        refreshes.increment();
+        // a failed refresh leaves the cached copy in place until it expires
+        created.exceptionally(e -> {
+            LOGGER.log(Level.WARNING, "Could not refresh template " + key.templateId, e);
+            return null;
+        });
+        try {
+            refreshExecutor.execute(() -> load(key, created));
+        } catch (RejectedExecutionException e) {
+            // a lookup of the expired template may already be waiting on this future, so it must be completed
+            load(key, created);
+        }
+    }
+
+    private void load(final Key key, final CompletableFuture<Template> future) {
+        loads.increment();
+        try {
+            Template template = key.version == LATEST
+                    ? client.getTemplateById(key.templateId)
+                    : client.getTemplateVersion(key.templateId, key.version);
+            long now = clock.millis();
+            synchronized (entries) {
+                entries.put(key, new CachedTemplate(template, now));
+                if (key.version == LATEST) {
+                    entries.put(new Key(key.templateId, template.getVersion()), new CachedTemplate(template, now));
+                }
+            }
+            future.complete(template);
+        } catch (NotificationClientException | RuntimeException e) {
+            loadFailures.increment();
+            future.completeExceptionally(e);
+        } catch (Throwable t) {
+            // complete the future before rethrowing, or lookups waiting on it would wait forever
+            loadFailures.increment();
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateCache{" +
+                "size=" + getSize() +
+                ", maximumSize=" + maximumSize +
+                ", hitCount=" + getHitCount() +
+                ", missCount=" + getMissCount() +
+                ", loadCount=" + getLoadCount() +
+                ", evictionCount=" + getEvictionCount() +
+                '}';
+    }
+
+    private static final class Key {
+        private final String templateId;
+        private final int version;
+
+        private Key(final String templateId, final int version) {
+            this.templateId = templateId;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return version == key.version && templateId.equals(key.templateId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * templateId.hashCode() + version;
+        }
+    }
+
+    private static final class CachedTemplate {
+        private final Template template;
+        private final long loadedAtMillis;
+
+        private CachedTemplate(final Template template, final long loadedAtMillis) {
+            this.template = template;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+    }
+
+    public static final class Builder {
+        private final NotificationClientApi client;
+        private int maximumSize = 1000;
+        private long refreshAfterMillis = TimeUnit.MINUTES.toMillis(1);
+        private long expireAfterMillis = TimeUnit.MINUTES.toMillis(10);
+        private Executor refreshExecutor = DEFAULT_REFRESH_EXECUTOR;
+
+        private Builder(final NotificationClientApi client) {
+            this.client = client;
+        }
+
+        /**
+         * @param maximumSize the most template versions kept, defaults to 1000
+         */
+        public Builder maximumSize(final int maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param refreshAfter how old the latest version of a template can be before it is fetched again in the
+         *                     background, defaults to 1 minute
+         */
+        public Builder refreshAfter(final long refreshAfter, final TimeUnit unit) {
+            this.refreshAfterMillis = unit.toMillis(refreshAfter);
+            return this;
+        }
+
+        /**
+         * @param expireAfter how old the latest version of a template can be before lookups wait for a fresh
+         *                    copy, defaults to 10 minutes
+         */
+        public Builder expireAfter(final long expireAfter, final TimeUnit unit) {
+            this.expireAfterMillis = unit.toMillis(expireAfter);
+            return this;
+        }
+
+        /**
+         * @param refreshExecutor runs the background refreshes, defaults to a shared pool of up to 4 daemon threads. If it
+         *                        rejects a refresh, the lookup that started it loads the template itself.
+         */
+        public Builder refreshExecutor(final Executor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+            return this;
+        }
+
+        public TemplateCache build() {
+            return new TemplateCache(this, Clock.systemUTC());
+        }
+
+        TemplateCache build(final Clock clock) {
+            return new TemplateCache(this, clock);
+        }
+    }
+}
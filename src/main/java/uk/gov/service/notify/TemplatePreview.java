@@ -25,6 +25,15 @@ public class TemplatePreview {
 
         }
 
+        TemplatePreview(UUID id, String templateType, int version, String body, String subject, String html) {
+            this.id = id;
+            this.templateType = templateType;
+            this.version = version;
+            this.body = body;
+            this.subject = subject;
+            this.html = html;
+        }
+
         private void build(JSONObject data) {
             id = UUID.fromString(data.getString("id"));
             templateType = data.getString("type");
@@ -0,0 +1,315 @@
+package uk.gov.service.notify;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fills in a template's <code>((placeholders))</code> locally, without a request to Notify.
+ * <p>
+ * It follows the rules below, which are Notify's as documented, and is tested against examples written by hand from
+ * those rules rather than against responses recorded from Notify. Expect the body and subject to match
+ * <code>generateTemplatePreview</code> for templates these rules cover, but use that when the exact output matters.
+ * <p>
+ * The template is split into text and placeholders once, when it is compiled, so rendering is a single pass that
+ * appends each part to a buffer. A compiled renderer is immutable and can be shared between threads.
+ * <p>
+ * It follows Notify's rules:
+ * <ul>
+ *     <li>Placeholder names are matched ignoring case, spaces, hyphens and underscores, so <code>((First name))</code>
+ *     is filled in by <code>first_name</code>.</li>
+ *     <li><code>((name??text))</code> shows <code>text</code> when the value of <code>name</code> is yes, y, true, t,
+ *     1, include or show, ignoring case, and nothing otherwise.</li>
+ *     <li>A list is shown as a bulleted list in an email or letter body, and as "a, b and c" in a subject or text
+ *     message. Empty items are left out.</li>
+ *     <li>A missing value fails with a 400 <code>NotificationClientException</code>, as Notify would.</li>
+ * </ul>
+ * The HTML version of an email and any SMS sender prefix are not produced, so <code>getHtml()</code> on the result
+ * is always empty.
+ */
+public final class TemplateRenderer {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\(\\(([^()]+)\\)\\)");
+    private static final String CONDITIONAL = "??";
+
+    private final UUID id;
+    private final String templateType;
+    private final int version;
+    private final Segment[] body;
+    private final Segment[] subject;
+    private final Map<String, String> placeholders;
+    private final Set<String> placeholderNames;
+    private final boolean markdownLists;
+
+    private TemplateRenderer(final UUID id, final String templateType, final int version, final String body, final String subject) {
+        this.id = id;
+        this.templateType = templateType;
+        this.version = version;
+        this.placeholders = new LinkedHashMap<>();
+        this.subject = subject != null ? compile(subject, placeholders) : null;
+        this.body = compile(body, placeholders);
+        this.placeholderNames = Collections.unmodifiableSet(new LinkedHashSet<>(placeholders.values()));
+        this.markdownLists = "email".equals(templateType) || "letter".equals(templateType);
+    }
+
+    /**
+     * @param template a template from <code>getTemplateById</code> or <code>getTemplateVersion</code>
+     */
+    public static TemplateRenderer compile(final Template template) {
+        return new TemplateRenderer(template.getId(), template.getTemplateType(), template.getVersion(),
+                template.getBody(), template.getSubject().orElse(null));
+    }
+
+    /**
+     * @return the name of every placeholder in the subject and body, as written in the template, in the order they
+     * first appear
+     */
+    public Set<String> getPlaceholderNames() {
+        return placeholderNames;
+    }
+
+    /**
+     * @return the names of the placeholders that the personalisation has no value for, in the order they first
+     * appear in the template, or an empty list if there are none. A value of null counts as missing.
+     */
+    public List<String> getMissingPersonalisation(final Map<String, ?> personalisation) {
+        Map<String, ?> values = personalisation != null ? personalisation : Collections.emptyMap();
+        Map<String, Object> normalised = null;
+        List<String> missing = null;
+        for (Map.Entry<String, String> placeholder : placeholders.entrySet()) {
+            if (values.get(placeholder.getValue()) != null) {
+                continue;
+            }
+            if (normalised == null) {
+                normalised = normalise(values);
+            }
+            if (normalised.get(placeholder.getKey()) == null) {
+                if (missing == null) {
+                    missing = new ArrayList<>();
+                }
+                missing.add(placeholder.getValue());
+            }
+        }
+        return missing != null ? missing : Collections.emptyList();
+    }
+
+    /**
+     * @param personalisation a value for every placeholder in the template
+     * @return the filled in body and subject
+     * @throws NotificationClientException with status code 400 if a placeholder has no value
+     */
+    public TemplatePreview render(final Map<String, ?> personalisation) throws NotificationClientException {
+        List<String> missing = getMissingPersonalisation(personalisation);
+        if (!missing.isEmpty()) {
+            throw new NotificationClientException(400, "Missing personalisation: " + String.join(", ", missing));
+        }
+        Lookup values = new Lookup(personalisation != null ? personalisation : Collections.emptyMap());
+        return new TemplatePreview(id, templateType, version,
+                render(body, values, markdownLists),
+                subject != null ? render(subject, values, false) : null,
+                null);
+    }
+
+    private static String render(final Segment[] segments, final Lookup values, final boolean markdownLists) {
+        StringBuilder out = new StringBuilder(estimateLength(segments));
+        for (Segment segment : segments) {
+            segment.appendTo(out, values, markdownLists);
+        }
+        return out.toString();
+    }
+
+    private static int estimateLength(final Segment[] segments) {
+        int length = 0;
+        for (Segment segment : segments) {
+            length += segment instanceof Text ? ((Text) segment).text.length() : 16;
+        }
+        return length;
+    }
+
+    private static Segment[] compile(final String content, final Map<String, String> placeholders) {
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(content);
+        int end = 0;
+        while (matcher.find()) {
+            if (matcher.start() > end) {
+                segments.add(new Text(content.substring(end, matcher.start())));
+            }
+            String placeholder = matcher.group(1);
+            int conditional = placeholder.indexOf(CONDITIONAL);
+            String name = (conditional < 0 ? placeholder : placeholder.substring(0, conditional)).trim();
+            String key = key(name);
+            placeholders.putIfAbsent(key, name);
+            segments.add(conditional < 0
+                    ? new Placeholder(name, key)
+                    : new Conditional(name, key, placeholder.substring(conditional + CONDITIONAL.length())));
+            end = matcher.end();
+        }
+        if (end < content.length()) {
+            segments.add(new Text(content.substring(end)));
+        }
+        return segments.toArray(new Segment[0]);
+    }
+
+    /**
+     * Notify ignores case, spaces, hyphens and underscores when matching personalisation to placeholders.
+     */
+    static String key(final String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != ' ' && c != '_' && c != '-') {
+                key.append(c);
+            }
+        }
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Leaves out null values, so a null written one way does not hide a value for the same placeholder written
+     * another way.
+     */
+    private static Map<String, Object> normalise(final Map<String, ?> personalisation) {
+        Map<String, Object> normalised = new HashMap<>();
+        for (Map.Entry<String, ?> entry : personalisation.entrySet()) {
+            if (entry.getValue() != null) {
+                normalised.put(key(entry.getKey()), entry.getValue());
+            }
+        }
+        return normalised;
+    }
+
+    private static boolean isTruthy(final Object value) {
+        if (value == null) {
+            return false;
+        }
+        switch (String.valueOf(value).toLowerCase(Locale.ROOT)) {
+            case "yes":
+            case "y":
+            case "true":
+            case "t":
+            case "1":
+            case "include":
+            case "show":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void appendValue(final StringBuilder out, final Object value, final boolean markdownLists) {
+        if (value == null) {
+            return;
+        }
+        if (!(value instanceof Collection)) {
+            out.append(value);
+            return;
+        }
+        List<String> items = new ArrayList<>();
+        for (Object item : (Collection<?>) value) {
+            if (item != null && !String.valueOf(item).isEmpty()) {
+                items.add(String.valueOf(item));
+            }
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+        if (markdownLists) {
+            out.append('\n');
+            for (String item : items) {
+                out.append('\n').append("* ").append(item);
+            }
+            return;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                out.append(i == items.size() - 1 ? " and " : ", ");
+            }
+            out.append(items.get(i));
+        }
+    }
+
+    /**
+     * Looks values up by the name as written in the template, and only builds a normalised copy of the
+     * personalisation if one is written differently.
+     */
+    private static final class Lookup {
+        private final Map<String, ?> personalisation;
+        private Map<String, Object> normalised;
+
+        private Lookup(final Map<String, ?> personalisation) {
+            this.personalisation = personalisation;
+        }
+
+        Object get(final String name, final String key) {
+            Object value = personalisation.get(name);
+            if (value != null) {
+                return value;
+            }
+            if (normalised == null) {
+                normalised = normalise(personalisation);
+            }
+            return normalised.get(key);
+        }
+    }
+
+    private interface Segment {
+        void appendTo(StringBuilder out, Lookup values, boolean markdownLists);
+    }
+
+    private static final class Text implements Segment {
+        private final String text;
+
+        private Text(final String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder out, final Lookup values, final boolean markdownLists) {
+            out.append(text);
+        }
+    }
+
+    private static final class Placeholder implements Segment {
+        private final String name;
+        private final String key;
+
+        private Placeholder(final String name, final String key) {
+            this.name = name;
+            this.key = key;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder out, final Lookup values, final boolean markdownLists) {
+            appendValue(out, values.get(name, key), markdownLists);
+        }
+    }
+
+    private static final class Conditional implements Segment {
+        private final String name;
+        private final String key;
+        private final String text;
+
+        private Conditional(final String name, final String key, final String text) {
+            this.name = name;
+            this.key = key;
+            this.text = text;
+        }
+
+        @Override
+        public void appendTo(final StringBuilder out, final Lookup values, final boolean markdownLists) {
+            if (isTruthy(values.get(name, key))) {
+                out.append(text);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package uk.gov.service.notify;
+
+/**
+ * Wraps a <code>NotificationClientException</code> thrown where a checked exception cannot be, such as from an
+ * <code>Iterator</code> or a <code>Stream</code>.
+ */
+public class UncheckedNotificationClientException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedNotificationClientException(NotificationClientException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public NotificationClientException getCause() {
+        return (NotificationClientException) super.getCause();
+    }
+}
@@ -0,0 +1,117 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void testLimitGrowsWhileLatencyStaysFlat() throws NotificationClientException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(4).build();
+
+        // keep the window full, as a busy sender would
+        for (int i = 0; i < 100; i++) {
+            while (limiter.getInFlight() < limiter.getLimit()) {
+                limiter.acquire();
+            }
+            limiter.onSuccess(System.nanoTime(), RTT);
+        }
+
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() >= 12);
+        assertEquals(0, limiter.getDecreaseCount());
+    }
+
+    @Test
+    public void testLimitIsNotGrownWhileItIsNotBeingUsed() throws NotificationClientException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(10).build();
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.onSuccess(System.nanoTime(), RTT);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void testFailuresFromTheSameWindowCutTheLimitOnce() throws NotificationClientException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(20).backoffRatio(0.5).build();
+        long sent = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+        }
+
+        for (int i = 0; i < 5; i++) {
+            limiter.onDropped(sent);
+        }
+
+        assertEquals(10, limiter.getLimit());
+        assertEquals(1, limiter.getDecreaseCount());
+
+        limiter.acquire();
+        limiter.onDropped(System.nanoTime());
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testRisingLatencyCutsTheLimit() throws NotificationClientException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(20).build();
+        limiter.acquire();
+        limiter.onSuccess(System.nanoTime(), RTT);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.onSuccess(System.nanoTime(), RTT * 5);
+        }
+
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() < 20);
+        assertEquals(RTT, limiter.getMinRttNanos());
+    }
+
+    @Test
+    public void testLimitIsNeverCutBelowTheMinimum() throws NotificationClientException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(3).minLimit(2).build();
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.onDropped(System.nanoTime());
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testAcquireWaitsForAPlaceUnderTheLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(1).build();
+        limiter.acquire();
+
+        CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire();
+            } catch (NotificationClientException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> waiting.get(50, TimeUnit.MILLISECONDS));
+
+        limiter.onIgnored();
+        assertTrue(waiting.get(1, TimeUnit.SECONDS) > 0);
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void testInvalidLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveConcurrencyLimiter.builder().minLimit(0).build());
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveConcurrencyLimiter.builder().initialLimit(300).build());
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveConcurrencyLimiter.builder().backoffRatio(1).build());
+    }
+}
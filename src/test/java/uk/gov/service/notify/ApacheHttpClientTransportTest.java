@@ -0,0 +1,111 @@
+package uk.gov.service.notify;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ApacheHttpClientTransportTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private ApacheHttpClientTransport transport;
+    private String baseUrl;
+
+    @Before
+    public void beforeEachTest() {
+        transport = ApacheHttpClientTransport.builder()
+                .maxConnectionsPerRoute(2)
+                .maxIdleTime(5, TimeUnit.SECONDS)
+                .build();
+        baseUrl = "http://localhost:" + wireMockRule.port();
+    }
+
+    @After
+    public void afterEachTest() throws IOException {
+        transport.close();
+    }
+
+    @Test
+    public void testPostSendsHeadersAndBody() throws IOException {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(aResponse().withStatus(201).withBody("{\"id\":\"1\"}")));
+
+        HttpTransportRequest request = new HttpTransportRequest("POST", baseUrl + "/v2/notifications/sms",
+                Collections.singletonMap("Content-Type", "application/json"),
+                RequestBody.of("{\"template_id\":\"abc\"}".getBytes(UTF_8)));
+
+        try (HttpTransportResponse response = transport.execute(request)) {
+            assertEquals(201, response.getStatusCode());
+            assertEquals("{\"id\":\"1\"}", IOUtils.toString(response.getBody(), UTF_8));
+        }
+
+        wireMockRule.verify(postRequestedFor(urlEqualTo("/v2/notifications/sms"))
+                .withHeader("Content-Type", equalTo("application/json"))
+                .withHeader("Content-Length", equalTo("21"))
+                .withRequestBody(equalTo("{\"template_id\":\"abc\"}")));
+    }
+
+    @Test
+    public void testErrorResponseBodyIsReturned() throws IOException {
+        wireMockRule.stubFor(get("/v2/template/abc")
+                .willReturn(aResponse().withStatus(404).withBody("not found")));
+
+        HttpTransportRequest request = new HttpTransportRequest("GET", baseUrl + "/v2/template/abc",
+                Collections.emptyMap(), null);
+
+        try (HttpTransportResponse response = transport.execute(request)) {
+            assertEquals(404, response.getStatusCode());
+            assertEquals("not found", IOUtils.toString(response.getBody(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testConnectionIsReturnedToThePoolWhenBodyIsNotRead() throws IOException {
+        wireMockRule.stubFor(get("/v2/template/abc")
+                .willReturn(aResponse().withStatus(200).withBody("a body that nobody reads")));
+
+        HttpTransportRequest request = new HttpTransportRequest("GET", baseUrl + "/v2/template/abc",
+                Collections.emptyMap(), null);
+
+        for (int i = 0; i < 5; i++) {
+            try (HttpTransportResponse response = transport.execute(request)) {
+                assertEquals(200, response.getStatusCode());
+            }
+        }
+
+        assertEquals(1, transport.getOpenConnections());
+        wireMockRule.verify(5, getRequestedFor(urlEqualTo("/v2/template/abc")));
+    }
+
+    @Test
+    public void testRequestBodyEntityCanBeReadAsWellAsWritten() throws IOException {
+        ApacheHttpClientTransport.RequestBodyEntity entity = new ApacheHttpClientTransport.RequestBodyEntity(
+                RequestBody.of("{\"template_id\":\"abc\"}".getBytes(UTF_8)));
+
+        assertTrue(entity.isRepeatable());
+        assertFalse(entity.isStreaming());
+        assertEquals("{\"template_id\":\"abc\"}", IOUtils.toString(entity.getContent(), UTF_8));
+        assertEquals("{\"template_id\":\"abc\"}", IOUtils.toString(entity.getContent(), UTF_8));
+    }
+}
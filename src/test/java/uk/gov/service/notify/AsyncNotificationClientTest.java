@@ -0,0 +1,170 @@
+package uk.gov.service.notify;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncNotificationClientTest {
+
+    private static final String COMBINED_API_KEY = "Api_key_name-" + UUID.randomUUID() + "-" + UUID.randomUUID();
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private ExecutorService executor;
+    private NotificationClient client;
+
+    @Before
+    public void beforeEachTest() {
+        executor = Executors.newFixedThreadPool(4);
+        client = new NotificationClient(COMBINED_API_KEY, "http://localhost:" + wireMockRule.port());
+    }
+
+    @After
+    public void afterEachTest() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSendSmsAsyncCompletesWithResponse() throws Exception {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(aResponse().withStatus(201).withBody(readResource("v2_notifications_sms_response.json"))));
+        AsyncNotificationClient asyncClient = new AsyncNotificationClient(client, executor);
+
+        SendSmsResponse response = asyncClient.sendSmsAsync("aTemplateId", "aPhoneNumber", emptyMap(), "aReference").get();
+
+        assertEquals(UUID.fromString("ca281672-fb80-4686-a583-80c89a9543d7"), response.getNotificationId());
+        assertEquals(0, asyncClient.getInFlight());
+    }
+
+    @Test
+    public void testFailureCompletesExceptionallyWithNotificationClientException() {
+        wireMockRule.stubFor(post("/v2/notifications/email")
+                .willReturn(serverError()));
+        AsyncNotificationClient asyncClient = new AsyncNotificationClient(client, executor);
+
+        CompletableFuture<SendEmailResponse> future = asyncClient.sendEmailAsync("aTemplateId", "anEmailAddress", emptyMap(), "aReference");
+
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertTrue(e.getCause() instanceof NotificationClientException);
+        assertEquals(500, ((NotificationClientException) e.getCause()).getHttpResult());
+    }
+
+    @Test
+    public void testInFlightRequestsAreBounded() throws Exception {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(aResponse().withStatus(201).withFixedDelay(50)
+                        .withBody(readResource("v2_notifications_sms_response.json"))));
+        AsyncNotificationClient asyncClient = new AsyncNotificationClient(client, executor, 2);
+
+        List<CompletableFuture<SendSmsResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(asyncClient.sendSmsAsync("aTemplateId", "aPhoneNumber", emptyMap(), "aReference"));
+            assertTrue(asyncClient.getInFlight() <= 2);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        wireMockRule.verify(6, postRequestedFor(urlEqualTo("/v2/notifications/sms")));
+        assertEquals(0, asyncClient.getInFlight());
+        assertEquals(0, asyncClient.getQueued());
+    }
+
+    @Test
+    public void testCallsOverTheLimitFromAnExecutorThreadAreQueuedInsteadOfBlocking() throws Exception {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(aResponse().withStatus(201).withBody(readResource("v2_notifications_sms_response.json"))));
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            AsyncNotificationClient asyncClient = new AsyncNotificationClient(client, singleThread, 1);
+
+            // the first request needs the executor's only thread, so blocking that thread for the second would never end
+            CompletableFuture<SendSmsResponse> second = CompletableFuture.supplyAsync(() -> {
+                asyncClient.sendSmsAsync("aTemplateId", "aPhoneNumber", emptyMap(), "aReference");
+                return asyncClient.sendSmsAsync("aTemplateId", "aPhoneNumber", emptyMap(), "aReference");
+            }, singleThread).get(1, TimeUnit.SECONDS);
+
+            assertEquals(UUID.fromString("ca281672-fb80-4686-a583-80c89a9543d7"), second.get(5, TimeUnit.SECONDS).getNotificationId());
+            wireMockRule.verify(2, postRequestedFor(urlEqualTo("/v2/notifications/sms")));
+            assertEquals(0, asyncClient.getInFlight());
+            assertEquals(0, asyncClient.getQueued());
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRetriesAreScheduledWithoutHoldingAnExecutorThread() throws Exception {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .inScenario("retry").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(429))
+                .willSetStateTo("recovered"));
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .inScenario("retry").whenScenarioStateIs("recovered")
+                .willReturn(aResponse().withStatus(201).withBody(readResource("v2_notifications_sms_response.json"))));
+        NotificationClient retryingClient = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl("http://localhost:" + wireMockRule.port())
+                .sendRetryPolicy(RetryPolicy.builder()
+                        .retryOn(429)
+                        .baseDelay(200, TimeUnit.MILLISECONDS)
+                        .jitter(ceiling -> ceiling)
+                        .build())
+                .build();
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            AsyncNotificationClient asyncClient = new AsyncNotificationClient(retryingClient, singleThread, 4, scheduler);
+
+            CompletableFuture<SendSmsResponse> retried = asyncClient.sendSmsAsync("aTemplateId", "aPhoneNumber", emptyMap(), "aReference");
+            Thread.sleep(50);
+            // the only executor thread is free while the retry waits
+            assertEquals("free", CompletableFuture.supplyAsync(() -> "free", singleThread).get(100, TimeUnit.MILLISECONDS));
+            assertEquals(1, asyncClient.getInFlight());
+
+            assertEquals(UUID.fromString("ca281672-fb80-4686-a583-80c89a9543d7"), retried.get().getNotificationId());
+            wireMockRule.verify(2, postRequestedFor(urlEqualTo("/v2/notifications/sms")));
+            assertEquals(0, asyncClient.getInFlight());
+        } finally {
+            singleThread.shutdownNow();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMaxInFlightMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncNotificationClient(client, executor, 0));
+    }
+
+    private String readResource(String name) throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+            return IOUtils.toString(in, UTF_8);
+        }
+    }
+}
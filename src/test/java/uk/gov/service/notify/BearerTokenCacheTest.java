@@ -0,0 +1,103 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class BearerTokenCacheTest {
+
+    private final String serviceId = UUID.randomUUID().toString();
+    private final String apiKey = UUID.randomUUID().toString();
+
+    @Test
+    public void testTokenIsReusedWithinTheReusePeriod() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(serviceId, apiKey, 10, clock);
+
+        String token = cache.getToken();
+        clock.advanceMillis(7_000);
+
+        assertSame(token, cache.getToken());
+    }
+
+    @Test
+    public void testTokenIsRefreshedBeforeItExpires() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(serviceId, apiKey, 10, clock);
+
+        String token = cache.getToken();
+        clock.advanceMillis(8_000);
+        String refreshed = cache.getToken();
+
+        assertNotSame(token, refreshed);
+        assertSame(refreshed, cache.getToken());
+    }
+
+    @Test
+    public void testTokenIsResignedOnceExpired() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(serviceId, apiKey, 10, clock);
+
+        String token = cache.getToken();
+        clock.advanceMillis(10_000);
+
+        assertNotSame(token, cache.getToken());
+    }
+
+    @Test
+    public void testTokenIsResignedIfClockGoesBackwards() {
+        MutableClock clock = new MutableClock();
+        BearerTokenCache cache = new BearerTokenCache(serviceId, apiKey, 10, clock);
+
+        String token = cache.getToken();
+        clock.advanceMillis(-1_000);
+
+        assertNotSame(token, cache.getToken());
+    }
+
+    @Test
+    public void testZeroReuseSignsEveryRequest() {
+        BearerTokenCache cache = new BearerTokenCache(serviceId, apiKey, 0);
+
+        assertNotSame(cache.getToken(), cache.getToken());
+    }
+
+    @Test
+    public void testReusePeriodMustFitInsideNotifyWindow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BearerTokenCache(serviceId, apiKey, BearerTokenCache.MAX_REUSE_SECONDS + 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BearerTokenCache(serviceId, apiKey, -1));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T10:00:00Z");
+
+        void advanceMillis(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
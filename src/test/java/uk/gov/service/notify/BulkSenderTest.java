@@ -0,0 +1,144 @@
+package uk.gov.service.notify;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class BulkSenderTest {
+
+    private static final String COMBINED_API_KEY = "Api_key_name-" + UUID.randomUUID() + "-" + UUID.randomUUID();
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private ExecutorService executor;
+    private AsyncNotificationClient asyncClient;
+
+    @Before
+    public void beforeEachTest() {
+        executor = Executors.newFixedThreadPool(4);
+        NotificationClient client = new NotificationClient(COMBINED_API_KEY, "http://localhost:" + wireMockRule.port());
+        asyncClient = new AsyncNotificationClient(client, executor, 4);
+    }
+
+    @After
+    public void afterEachTest() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSendInOrderDeliversResultsInTheOrderRequestsWereProduced() throws Exception {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(aResponse().withStatus(201).withUniformRandomDelay(0, 30)
+                        .withBody(readResource("v2_notifications_sms_response.json"))));
+        List<BulkSender.Result<SendSmsResponse>> results = new ArrayList<>();
+
+        BulkSender.Summary summary = new BulkSender(asyncClient).sendInOrder(
+                IntStream.range(0, 20).mapToObj(i -> BulkSender.Request.sms("aTemplateId", "aPhoneNumber", emptyMap(), "reference-" + i)),
+                results::add);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertEquals("reference-" + i, results.get(i).getRequest().getReference());
+            assertTrue(results.get(i).isSuccess());
+        }
+        assertEquals(20, summary.getRequestCount());
+        assertEquals(20, summary.getSuccessCount());
+        assertEquals(0, summary.getFailureCount());
+        assertEquals(20, summary.getLatency().getCount());
+        assertTrue(summary.getRequestsPerSecond() > 0);
+        wireMockRule.verify(20, postRequestedFor(urlEqualTo("/v2/notifications/sms")));
+    }
+
+    @Test
+    public void testFailuresArePassedToTheCallbackAndCounted() throws Exception {
+        wireMockRule.stubFor(post("/v2/notifications/email")
+                .willReturn(aResponse().withStatus(201).withBody(readResource("v2_notifications_email_response.json"))));
+        wireMockRule.stubFor(post("/v2/notifications/email")
+                .withRequestBody(containing("bad-address"))
+                .willReturn(aResponse().withStatus(400).withBody("{\"errors\":[]}")));
+        List<BulkSender.Result<SendEmailResponse>> failures = new ArrayList<>();
+
+        BulkSender.Summary summary = new BulkSender(asyncClient).send(
+                IntStream.range(0, 10).mapToObj(i -> BulkSender.Request.email("aTemplateId", i % 5 == 0 ? "bad-address" : "anEmailAddress", emptyMap(), null)),
+                result -> {
+                    if (!result.isSuccess()) {
+                        failures.add(result);
+                    }
+                });
+
+        assertEquals(10, summary.getRequestCount());
+        assertEquals(8, summary.getSuccessCount());
+        assertEquals(2, summary.getFailureCount());
+        assertEquals(2, failures.size());
+        for (BulkSender.Result<SendEmailResponse> failure : failures) {
+            assertEquals(400, ((NotificationClientException) failure.getException()).getHttpResult());
+        }
+    }
+
+    @Test
+    public void testRequestsAreTakenFromTheProducerOnlyAsFastAsTheyComplete() throws Exception {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(aResponse().withStatus(201).withFixedDelay(20)
+                        .withBody(readResource("v2_notifications_sms_response.json"))));
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        Iterator<BulkSender.Request<SendSmsResponse>> requests = new Iterator<BulkSender.Request<SendSmsResponse>>() {
+            @Override
+            public boolean hasNext() {
+                // never more than two requests ahead of the callback
+                assertTrue(produced.get() - delivered.get() <= 2);
+                return produced.get() < 10;
+            }
+
+            @Override
+            public BulkSender.Request<SendSmsResponse> next() {
+                produced.incrementAndGet();
+                return BulkSender.Request.sms("aTemplateId", "aPhoneNumber", emptyMap(), null);
+            }
+        };
+
+        BulkSender.Summary summary = new BulkSender(asyncClient, 2).send(requests, result -> delivered.incrementAndGet());
+
+        assertEquals(10, summary.getSuccessCount());
+        assertEquals(10, delivered.get());
+    }
+
+    @Test
+    public void testMaxInFlightIsCappedByTheClient() {
+        assertEquals(4, new BulkSender(asyncClient, 100).getMaxInFlight());
+        assertThrows(IllegalArgumentException.class, () -> new BulkSender(asyncClient, 0));
+    }
+
+    private String readResource(String name) throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+            return IOUtils.toString(in, UTF_8);
+        }
+    }
+}
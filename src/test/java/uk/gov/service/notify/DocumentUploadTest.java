@@ -0,0 +1,122 @@
+package uk.gov.service.notify;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class DocumentUploadTest {
+
+    @Test
+    public void testDocumentIsEncodedIntoTheRequestBody() throws Exception {
+        byte[] document = randomBytes(100_000);
+        DocumentUpload upload = DocumentUpload.of(document)
+                .filename("report.csv")
+                .confirmEmailBeforeDownload(true)
+                .retentionPeriod(new RetentionPeriodDuration(10, ChronoUnit.WEEKS));
+
+        try (JsonBody body = JsonBody.open()
+                .field("personalisation", Collections.singletonMap("link_to_file", upload))
+                .field("reference", "a reference")) {
+            String expected = "{\"personalisation\":{\"link_to_file\":{\"file\":\"" + Base64.getEncoder().encodeToString(document)
+                    + "\",\"filename\":\"report.csv\",\"confirm_email_before_download\":true,\"retention_period\":\"10 weeks\"}},"
+                    + "\"reference\":\"a reference\"}";
+            byte[] written = body.toByteArray();
+
+            assertEquals(expected, new String(written, UTF_8));
+            assertEquals(written.length, body.contentLength());
+        }
+    }
+
+    @Test
+    public void testUnsetOptionsAreWrittenAsNull() throws Exception {
+        DocumentUpload upload = DocumentUpload.of("abc".getBytes(UTF_8));
+
+        try (JsonBody body = JsonBody.open().field("link_to_file", upload)) {
+            assertEquals("{\"link_to_file\":{\"file\":\"YWJj\",\"filename\":null,\"confirm_email_before_download\":null,\"retention_period\":null}}",
+                    new String(body.toByteArray(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testFileIsReadAgainEachTimeTheBodyIsWritten() throws Exception {
+        byte[] document = randomBytes(50_000);
+        Path file = Files.createTempFile("document", ".csv");
+        try {
+            Files.write(file, document);
+            DocumentUpload upload = DocumentUpload.of(file);
+
+            try (JsonBody body = JsonBody.open().field("first", upload).field("second", DocumentUpload.of(() -> new ByteArrayInputStream(document), document.length))) {
+                ByteArrayOutputStream first = new ByteArrayOutputStream();
+                body.writeTo(first);
+                ByteArrayOutputStream retry = new ByteArrayOutputStream();
+                body.writeTo(retry);
+
+                assertEquals(first.toString("UTF-8"), retry.toString("UTF-8"));
+                assertEquals(retry.size(), body.contentLength());
+                assertEquals(document.length, upload.getSize());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMissingFileKeepsTheCause() throws Exception {
+        Path missing = Files.createTempFile("document", ".csv");
+        Files.delete(missing);
+
+        NotificationClientException e = assertThrows(NotificationClientException.class, () -> DocumentUpload.of(missing));
+
+        assertEquals(400, e.getHttpResult());
+        assertEquals(NoSuchFileException.class, e.getCause().getClass());
+    }
+
+    @Test
+    public void testSourceOfTheWrongLengthFailsTheRequest() throws Exception {
+        DocumentUpload upload = DocumentUpload.of(() -> new ByteArrayInputStream(new byte[10]), 11);
+
+        try (JsonBody body = JsonBody.open().field("link_to_file", upload)) {
+            assertThrows(IOException.class, () -> body.writeTo(new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    public void testDocumentsLargerThan2MBAreRejected() {
+        NotificationClientException e = assertThrows(NotificationClientException.class,
+                () -> DocumentUpload.of(new byte[2 * 1024 * 1024 + 1]));
+
+        assertEquals(413, e.getHttpResult());
+        assertEquals("Status code: 413 File is larger than 2MB", e.getMessage());
+    }
+
+    @Test
+    public void testJSONStringIsTheSameAsPrepareUpload() throws Exception {
+        byte[] document = randomBytes(1000);
+
+        JSONObject expected = NotificationClient.prepareUpload(document, "report.csv");
+        JSONObject actual = new JSONObject(DocumentUpload.of(document).filename("report.csv").toJSONString());
+
+        assertEquals(expected.getString("file"), actual.getString("file"));
+        assertEquals(expected.getString("filename"), actual.getString("filename"));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,99 @@
+package uk.gov.service.notify;
+
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.jwx.HeaderParameterNames;
+import org.jose4j.lang.JoseException;
+import org.junit.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class Hs256TokenSignerTest {
+
+    @Test
+    public void testTokenIsIdenticalToJose4j() throws Exception {
+        String serviceId = UUID.randomUUID().toString();
+        String apiKey = UUID.randomUUID().toString();
+        Hs256TokenSigner signer = new Hs256TokenSigner(serviceId, apiKey);
+
+        for (long issuedAt : new long[]{0, 1, 9, 10, 1_700_000_000L, 1_700_000_001L, 99_999_999_999L}) {
+            assertEquals(signWithJose4j(serviceId, apiKey, issuedAt), signer.sign(issuedAt));
+        }
+    }
+
+    @Test
+    public void testTokenIsIdenticalToJose4jForIssuersThatNeedEscaping() throws Exception {
+        String apiKey = UUID.randomUUID().toString();
+
+        for (String issuer : new String[]{"", "a", "ab", "abc", "a/b", "quote\"d", "back\\slash", "tab\there",
+                "caf\u00e9", "line\u2028separator", "\u0001control", "\u20ac euro"}) {
+            Hs256TokenSigner signer = new Hs256TokenSigner(issuer, apiKey);
+            assertEquals(issuer, signWithJose4j(issuer, apiKey, 1_700_000_000L), signer.sign(1_700_000_000L));
+        }
+    }
+
+    @Test
+    public void testTokenIsAcceptedByJose4jConsumer() throws InvalidJwtException {
+        String serviceId = UUID.randomUUID().toString();
+        String apiKey = UUID.randomUUID().toString();
+
+        String token = new Hs256TokenSigner(serviceId, apiKey).sign();
+
+        new JwtConsumerBuilder()
+                .setExpectedIssuer(serviceId)
+                .setIssuedAtRestrictions(60, 60)
+                .setVerificationKey(new SecretKeySpec(apiKey.getBytes(StandardCharsets.UTF_8), "RAW"))
+                .setJwsAlgorithmConstraints(AlgorithmConstraints.ConstraintType.PERMIT, AlgorithmIdentifiers.HMAC_SHA256)
+                .build()
+                .process(token);
+    }
+
+    @Test
+    public void testTokenIsIdenticalToAuthenticationCreate() throws Exception {
+        String serviceId = UUID.randomUUID().toString();
+        String apiKey = UUID.randomUUID().toString();
+        Hs256TokenSigner signer = new Hs256TokenSigner(serviceId, apiKey);
+
+        String expected;
+        long before;
+        long after;
+        do {
+            // try again in the unlikely event the second ticks over while jose4j is signing
+            before = System.currentTimeMillis() / 1000;
+            expected = new Authentication().create(serviceId, apiKey);
+            after = System.currentTimeMillis() / 1000;
+        } while (before != after);
+
+        assertEquals(expected, signer.sign(before));
+    }
+
+    @Test
+    public void testShortKeysAreRejectedWhenSigningLikeJose4j() {
+        Hs256TokenSigner signer = new Hs256TokenSigner(UUID.randomUUID().toString(), "too short");
+
+        assertThrows(IllegalArgumentException.class, signer::sign);
+    }
+
+    private static String signWithJose4j(String issuer, String secret, long issuedAt) throws JoseException, UnsupportedEncodingException {
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.HMAC_SHA256);
+        jws.setHeader(HeaderParameterNames.TYPE, "JWT");
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer(issuer);
+        claims.setIssuedAt(NumericDate.fromSeconds(issuedAt));
+        jws.setPayload(claims.toJson());
+        jws.setKey(Authentication.keyFromString(secret));
+        return jws.getCompactSerialization();
+    }
+}
@@ -0,0 +1,65 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.security.GeneralSecurityException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HttpUrlConnectionTransportTest {
+
+    @Test
+    public void testSslContextIsAppliedPerConnectionNotGlobally() throws IOException, GeneralSecurityException {
+        SSLSocketFactory globalDefault = HttpsURLConnection.getDefaultSSLSocketFactory();
+        SSLContext sslContext = newSslContext();
+
+        HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport(null, sslContext);
+        NotificationClient client = NotificationClient.builder("Api_key_name-" + UUID.randomUUID() + "-" + UUID.randomUUID())
+                .sslContext(sslContext)
+                .build();
+        HttpsURLConnection connection = (HttpsURLConnection) transport.getConnection(new URL("https://api.notifications.service.gov.uk/v2/notifications"));
+
+        assertSame(transport.getSslSocketFactory(), connection.getSSLSocketFactory());
+        assertSame(transport.getSslSocketFactory(), ((HttpUrlConnectionTransport) client.getTransport()).getSslSocketFactory());
+        assertSame(globalDefault, HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    @Test
+    public void testTransportsOnlyShareAFactoryForTheSameContext() throws GeneralSecurityException {
+        SSLContext first = newSslContext();
+        SSLContext second = newSslContext();
+
+        assertSame(new HttpUrlConnectionTransport(null, first).getSslSocketFactory(), new HttpUrlConnectionTransport(null, first).getSslSocketFactory());
+        assertNotSame(new HttpUrlConnectionTransport(null, first).getSslSocketFactory(), new HttpUrlConnectionTransport(null, second).getSslSocketFactory());
+        assertNull(new HttpUrlConnectionTransport().getSslSocketFactory());
+    }
+
+    @Test
+    public void testFailureToConnectIsReportedAsAConnectException() {
+        HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport();
+        HttpTransportRequest request = new HttpTransportRequest("GET", "http://notify.invalid/v2/notifications", Collections.emptyMap(), null);
+
+        ConnectException e = assertThrows(ConnectException.class, () -> transport.execute(request));
+
+        assertTrue(e.getCause() instanceof UnknownHostException);
+    }
+
+    private static SSLContext newSslContext() throws GeneralSecurityException {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, null, null);
+        return sslContext;
+    }
+}
@@ -0,0 +1,90 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+public class JfrEventsTest {
+
+    @Test
+    public void testBeginReturnsNullWhenNoRecordingHasTheEventEnabled() {
+        assertNull(JfrEvents.begin());
+    }
+
+    @Test
+    public void testCommitIgnoresAMissingEvent() {
+        JfrEvents.commit(null, new RequestMetrics("GET", "/v2/notifications/{id}", 200, 0, 10, 0, 0, -1, 0, 100));
+    }
+
+    /**
+     * The recording is driven through reflection, as <code>JfrEvents</code> is, so this compiles on a Java 8 JDK
+     * without <code>jdk.jfr</code> and is skipped there.
+     */
+    @Test
+    public void testARecordingWithTheEventEnabledRecordsTheRequest() throws Exception {
+        assumeTrue("Java Flight Recorder is not available", JfrEvents.isAvailable());
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        Path dump = Files.createTempFile("notify-jfr", ".jfr");
+        List<Object> events;
+        try {
+            recordingClass.getMethod("enable", String.class).invoke(recording, JfrEvents.EVENT_NAME);
+            recordingClass.getMethod("start").invoke(recording);
+
+            Object event = JfrEvents.begin();
+            assertNotNull(event);
+            JfrEvents.commit(event, new RequestMetrics("POST", "/v2/notifications/email", 201, 120, 340, 5, 6, 7, 8, 100));
+
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, dump);
+            events = requestEvents(dump);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.deleteIfExists(dump);
+        }
+
+        assertEquals(1, events.size());
+        Object recorded = events.get(0);
+        assertEquals("POST", value(recorded, "method"));
+        assertEquals("/v2/notifications/email", value(recorded, "endpoint"));
+        assertEquals(201, value(recorded, "statusCode"));
+        assertEquals(120L, value(recorded, "bytesSent"));
+        assertEquals(340L, value(recorded, "bytesReceived"));
+        assertEquals(5L, value(recorded, "queueWait"));
+        assertEquals(6L, value(recorded, "signing"));
+        assertEquals(7L, value(recorded, "connect"));
+        assertEquals(8L, value(recorded, "parse"));
+
+        // the wait covers the concurrency limiter as well as the rate limiter
+        Object eventType = recorded.getClass().getMethod("getEventType").invoke(recorded);
+        Object queueWait = eventType.getClass().getMethod("getField", String.class).invoke(eventType, "queueWait");
+        assertEquals("Client Queue Wait", queueWait.getClass().getMethod("getLabel").invoke(queueWait));
+    }
+
+    private static List<Object> requestEvents(Path dump) throws ReflectiveOperationException {
+        List<?> all = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class).invoke(null, dump);
+        List<Object> events = new ArrayList<>();
+        for (Object event : all) {
+            Object eventType = event.getClass().getMethod("getEventType").invoke(event);
+            if ("uk.gov.service.notify.Request".equals(eventType.getClass().getMethod("getName").invoke(eventType))) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static Object value(Object recordedEvent, String field) throws ReflectiveOperationException {
+        return Class.forName("jdk.jfr.consumer.RecordedObject")
+                .getMethod("getValue", String.class).invoke(recordedEvent, field);
+    }
+}
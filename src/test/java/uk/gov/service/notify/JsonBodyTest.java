@@ -0,0 +1,173 @@
+package uk.gov.service.notify;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonBodyTest {
+
+    @Test
+    public void testOptionalFieldsAreLeftOut() {
+        try (JsonBody body = JsonBody.open()
+                .fieldIfPresent("email_address", "someone@example.gov.uk")
+                .fieldIfPresent("reference", "")
+                .fieldIfPresent("personalisation", new HashMap<>())
+                .fieldIfPresent("postage", null)) {
+            assertEquals("{\"email_address\":\"someone@example.gov.uk\"}", new String(body.toByteArray(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testStringsAreEscapedAsJSONObjectWouldEscapeThem() {
+        try (JsonBody body = JsonBody.open().field("content", "\"quoted\" \\ </p>\n\t\u0001\u2028")) {
+            assertEquals("{\"content\":\"\\\"quoted\\\" \\\\ <\\/p>\\n\\t\\u0001\\u2028\"}",
+                    new String(body.toByteArray(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testNonAsciiTextIsWrittenAsUtf8() {
+        String text = "Caf\u00e9 Cymraeg \u0175 \ud83d\udc4d";
+        try (JsonBody body = JsonBody.open().field("name", text)) {
+            assertArrayEquals(("{\"name\":\"" + text + "\"}").getBytes(UTF_8), body.toByteArray());
+        }
+    }
+
+    @Test
+    public void testMapsAndListsAreWrittenAsObjectsAndArrays() {
+        Map<String, Object> personalisation = new LinkedHashMap<>();
+        personalisation.put("name", "Jo");
+        personalisation.put("items", Arrays.asList("a", "b"));
+        personalisation.put("count", 3);
+        personalisation.put("confirmed", true);
+        personalisation.put("left_out", null);
+
+        try (JsonBody body = JsonBody.open().fieldIfPresent("personalisation", personalisation)) {
+            assertEquals("{\"personalisation\":{\"name\":\"Jo\",\"items\":[\"a\",\"b\"],\"count\":3,\"confirmed\":true}}",
+                    new String(body.toByteArray(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testContentLengthMatchesTheBytesWritten() throws IOException {
+        try (JsonBody body = JsonBody.open().field("content", "\u00e9\u00e9\u00e9")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            body.writeTo(out);
+            body.writeTo(out);
+
+            assertEquals(out.size() / 2, body.contentLength());
+            assertEquals(20, body.contentLength());
+        }
+    }
+
+    @Test
+    public void testBodiesOpenAtTheSameTimeDoNotShareABuffer() {
+        try (JsonBody first = JsonBody.open().field("id", "first");
+             JsonBody second = JsonBody.open().field("id", "second")) {
+            assertEquals("{\"id\":\"first\"}", new String(first.toByteArray(), UTF_8));
+            assertEquals("{\"id\":\"second\"}", new String(second.toByteArray(), UTF_8));
+        }
+        try (JsonBody reused = JsonBody.open().field("id", "third")) {
+            assertEquals("{\"id\":\"third\"}", new String(reused.toByteArray(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testBodiesLargerThanTheRetainedBufferAreWritten() {
+        char[] content = new char[JsonBody.MAX_RETAINED_CAPACITY * 2];
+        Arrays.fill(content, 'a');
+        try (JsonBody body = JsonBody.open().field("content", new String(content))) {
+            assertEquals(content.length + 14, body.contentLength());
+        }
+        try (JsonBody body = JsonBody.open().field("content", "small")) {
+            assertEquals("{\"content\":\"small\"}", new String(body.toByteArray(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testBodyIsTheSameAsTheJSONObjectItReplaces() {
+        Map<String, Object> personalisation = new HashMap<>();
+        personalisation.put("name", "Jo </b> \u00e9");
+        personalisation.put("items", Arrays.asList("a", "b"));
+        NotificationClient client = new NotificationClient("Api_key_name-" + UUID.randomUUID() + "-" + UUID.randomUUID(), "http://localhost");
+
+        try (JsonBody body = client.createBodyForPostRequest("f33517ff-2a88-4f6e-b855-c550268ce08a", null,
+                "someone@example.gov.uk", personalisation, "a reference", null, null)) {
+            JSONObject expected = new JSONObject();
+            expected.put("email_address", "someone@example.gov.uk");
+            expected.put("template_id", "f33517ff-2a88-4f6e-b855-c550268ce08a");
+            expected.put("personalisation", personalisation);
+            expected.put("reference", "a reference");
+
+            assertTrue(expected.similar(new JSONObject(new String(body.toByteArray(), UTF_8))));
+        }
+    }
+
+    @Test
+    public void testEnumsAreWrittenByNameAsJSONObjectWritesThem() {
+        assertWrittenAsJSONObjectWritesIt(Postage.FIRST_CLASS);
+    }
+
+    @Test
+    public void testBeansAreWrittenAsObjectsAsJSONObjectWritesThem() {
+        assertWrittenAsJSONObjectWritesIt(new Address("1 Street", "SW1A 1AA"));
+    }
+
+    @Test
+    public void testOtherValuesAreWrittenAsJSONObjectWritesThem() {
+        assertWrittenAsJSONObjectWritesIt(LocalDate.of(2024, 2, 29));
+        assertWrittenAsJSONObjectWritesIt('x');
+        assertWrittenAsJSONObjectWritesIt(1.5);
+        assertWrittenAsJSONObjectWritesIt(2.25f);
+        assertWrittenAsJSONObjectWritesIt(new BigDecimal("10.50"));
+    }
+
+    private static void assertWrittenAsJSONObjectWritesIt(Object value) {
+        try (JsonBody body = JsonBody.open().field("value", value)) {
+            assertEquals(new JSONObject(Collections.singletonMap("value", value)).toString(),
+                    new String(body.toByteArray(), UTF_8));
+        }
+    }
+
+    enum Postage {
+        FIRST_CLASS {
+            @Override
+            public String toString() {
+                return "first class";
+            }
+        }
+    }
+
+    public static class Address {
+        private final String line1;
+        private final String postcode;
+
+        Address(String line1, String postcode) {
+            this.line1 = line1;
+            this.postcode = postcode;
+        }
+
+        public String getLine1() {
+            return line1;
+        }
+
+        public String getPostcode() {
+            return postcode;
+        }
+    }
+}
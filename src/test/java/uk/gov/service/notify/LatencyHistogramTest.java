@@ -0,0 +1,78 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(50.5, histogram.getMeanNanos(), 0.0001);
+    }
+
+    @Test
+    public void testPercentilesAreWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10000];
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = TimeUnit.MICROSECONDS.toNanos(100) + (long) (random.nextDouble() * TimeUnit.MILLISECONDS.toNanos(500));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " too far above " + exact, reported <= exact + exact / 64);
+        }
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+        assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testBucketsCoverEveryValueOnce() {
+        long previousHighest = -1;
+        for (int index = 0; index <= LatencyHistogram.indexOf(TimeUnit.HOURS.toNanos(1)); index++) {
+            long highest = LatencyHistogram.highestValueAt(index);
+            assertEquals(index, LatencyHistogram.indexOf(previousHighest + 1));
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(TimeUnit.HOURS.toNanos(1), histogram.getMaxNanos());
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMeanNanos(), 0);
+    }
+}
@@ -37,34 +37,54 @@ import uk.gov.service.notify.domain.NotifyTemplatePreviewResponse;
 
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.created;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.serviceUnavailable;
 import static com.github.tomakehurst.wiremock.client.WireMock.unauthorized;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static java.util.Collections.emptyMap;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -439,6 +459,150 @@ public class NotificationClientTest {
         assertEquals("an smsSenderId", requestReceivedByNotifyApi.getSmsSenderId());
     }
 
+    @Test
+    public void testSendSmsWithSharedApacheHttpClientTransport() throws IOException, NotificationClientException {
+        NotifySmsResponse expected = objectMapper.readValue(this.getClass().getClassLoader().getResourceAsStream("v2_notifications_sms_response.json"), NotifySmsResponse.class);
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(created()
+                        .withResponseBody(new Body(objectMapper.writeValueAsString(expected)))));
+
+        try (ApacheHttpClientTransport transport = ApacheHttpClientTransport.builder().build()) {
+            NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                    .baseUrl(BASE_URL)
+                    .transport(transport)
+                    .build();
+
+            SendSmsResponse actual = client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference");
+
+            assertEquals(expected.getNotificationId(), actual.getNotificationId());
+            assertEquals(transport, client.getTransport());
+        }
+
+        LoggedRequest request = validateRequest();
+        NotifySmsRequest requestReceivedByNotifyApi = objectMapper.readValue(request.getBodyAsString(), NotifySmsRequest.class);
+        assertEquals("a phone number", requestReceivedByNotifyApi.getPhoneNumber());
+        assertEquals("aTemplateId", requestReceivedByNotifyApi.getTemplateId());
+    }
+
+    @Test
+    public void testMetricsListenerRecordsEachRequest() throws IOException, NotificationClientException {
+        NotifySmsResponse expected = objectMapper.readValue(this.getClass().getClassLoader().getResourceAsStream("v2_notifications_sms_response.json"), NotifySmsResponse.class);
+        String responseBody = objectMapper.writeValueAsString(expected);
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(created()
+                        .withResponseBody(new Body(responseBody))));
+        wireMockRule.stubFor(get(urlPathEqualTo("/v2/template/aTemplateId"))
+                .willReturn(notFound()));
+        HistogramMetricsListener metrics = new HistogramMetricsListener();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .metricsListener(metrics)
+                .build();
+
+        client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference");
+        assertThrows(NotificationClientException.class, () -> client.getTemplateById("aTemplateId"));
+
+        HistogramMetricsListener.EndpointMetrics sms = metrics.getEndpoint("/v2/notifications/sms");
+        assertEquals(1, sms.getRequestCount());
+        assertEquals(0, sms.getErrorCount());
+        assertEquals(responseBody.getBytes(StandardCharsets.UTF_8).length, sms.getBytesReceived());
+        assertTrue(sms.getBytesSent() > 0);
+        assertTrue(sms.getLatency().getMaxNanos() > 0);
+        HistogramMetricsListener.EndpointMetrics template = metrics.getEndpoint("/v2/template/{id}");
+        assertEquals(1, template.getErrorCount());
+        assertEquals(Collections.singletonMap(404, 1L), template.getStatusCodeCounts());
+    }
+
+    @Test
+    public void testConcurrencyLimiterIsCutWhenSendsAreRateLimited() {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(aResponse().withStatus(429)));
+        wireMockRule.stubFor(get(urlPathEqualTo("/v2/template/aTemplateId"))
+                .willReturn(serverError()));
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(10).build();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .concurrencyLimiter(limiter)
+                .build();
+
+        assertThrows(NotificationClientException.class, () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+        assertThrows(NotificationClientException.class, () -> client.getTemplateById("aTemplateId"));
+
+        // only the send counts against the limit
+        assertEquals(7, limiter.getLimit());
+        assertEquals(1, limiter.getDecreaseCount());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testConcurrencyLimiterPlaceIsGivenBackWhenSigningFails() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(1).minLimit(1).build();
+        NotificationClient client = NotificationClient.builder("too-short")
+                .baseUrl(BASE_URL)
+                .concurrencyLimiter(limiter)
+                .build();
+
+        // with a limit of 1 the second send would wait forever if the first kept its place
+        assertThrows(IllegalArgumentException.class, () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+        assertThrows(IllegalArgumentException.class, () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getDecreaseCount());
+    }
+
+    @Test
+    public void testConcurrencyLimiterPlaceIsGivenBackWhenTheRateLimiterRejectsTheSend() throws NotificationClientException {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(1).minLimit(1).build();
+        RateLimiter rateLimiter = new RateLimiter(1, RateLimiter.Mode.FAIL_FAST);
+        rateLimiter.acquire();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .rateLimiter(rateLimiter)
+                .concurrencyLimiter(limiter)
+                .build();
+
+        NotificationClientException e = assertThrows(NotificationClientException.class,
+                () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+        assertEquals(429, e.getHttpResult());
+        assertThrows(NotificationClientException.class, () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getDecreaseCount());
+    }
+
+    @Test
+    public void testTemplatePreviewsDoNotCountAgainstTheConcurrencyLimiter() {
+        wireMockRule.stubFor(post("/v2/template/aTemplateId/preview")
+                .willReturn(serverError()));
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().initialLimit(10).build();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .concurrencyLimiter(limiter)
+                .build();
+
+        assertThrows(NotificationClientException.class, () -> client.generateTemplatePreview("aTemplateId", emptyMap()));
+
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getDecreaseCount());
+    }
+
+    @Test
+    public void testValidatePersonalisationFailsBeforeSending() throws IOException {
+        wireMockRule.stubFor(get(urlPathEqualTo("/v2/template/aTemplateId"))
+                .willReturn(ok(IOUtils.toString(getClass().getClassLoader().getResourceAsStream("v2_template_byid_response.json"), StandardCharsets.UTF_8)
+                        .replace("a body", "Hello ((name))"))));
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .validatePersonalisation(true)
+                .build();
+
+        NotificationClientException e = assertThrows(NotificationClientException.class,
+                () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+
+        assertEquals(400, e.getHttpResult());
+        wireMockRule.verify(0, postRequestedFor(urlPathEqualTo("/v2/notifications/sms")));
+    }
+
     @Test
     public void testSendLetterHandlesErrors() {
         wireMockRule.stubFor(post("/v2/notifications/letter")
@@ -594,6 +758,181 @@ public class NotificationClientTest {
         validateRequest();
     }
 
+    @Test
+    public void testGetPdfForLetterToOutputStream() throws NotificationClientException, IOException {
+        final UUID notificationId = UUID.randomUUID();
+        byte[] pdfFile = IOUtils.toByteArray(this.getClass().getClassLoader().getResourceAsStream("one_page_pdf.pdf"));
+        wireMockRule.stubFor(get("/v2/notifications/" + notificationId + "/pdf")
+                .willReturn(ok()
+                        .withResponseBody(new Body(pdfFile))));
+        NotificationClient client = new NotificationClient(COMBINED_API_KEY, BASE_URL);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = client.getPdfForLetter(notificationId.toString(), out);
+
+        assertEquals(pdfFile.length, written);
+        assertArrayEquals(pdfFile, out.toByteArray());
+        validateRequest();
+    }
+
+    @Test
+    public void testGetPdfForLetterReplacesFile() throws NotificationClientException, IOException {
+        final UUID notificationId = UUID.randomUUID();
+        byte[] pdfFile = IOUtils.toByteArray(this.getClass().getClassLoader().getResourceAsStream("one_page_pdf.pdf"));
+        wireMockRule.stubFor(get("/v2/notifications/" + notificationId + "/pdf")
+                .willReturn(ok()
+                        .withResponseBody(new Body(pdfFile))));
+        NotificationClient client = new NotificationClient(COMBINED_API_KEY, BASE_URL);
+        Path destination = Files.createTempFile("letter", ".pdf");
+        Files.write(destination, new byte[pdfFile.length * 2]);
+
+        try {
+            long written = client.getPdfForLetter(notificationId.toString(), destination);
+
+            assertEquals(pdfFile.length, written);
+            assertArrayEquals(pdfFile, Files.readAllBytes(destination));
+        } finally {
+            Files.delete(destination);
+        }
+        validateRequest();
+    }
+
+    @Test
+    public void testSendsAreNotRetriedByDefaultHoweverTheClientIsBuilt() {
+        assertSame(RetryPolicy.none(), new NotificationClient(COMBINED_API_KEY, BASE_URL).getSendRetryPolicy());
+        assertSame(RetryPolicy.none(), NotificationClient.builder(COMBINED_API_KEY).baseUrl(BASE_URL).build().getSendRetryPolicy());
+    }
+
+    @Test
+    public void testRetryAfterIsReadFromA429() {
+        AtomicInteger attempts = new AtomicInteger();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .transport(request -> {
+                    attempts.incrementAndGet();
+                    return new HttpTransportResponse(429, null, null, -1, name -> name.equalsIgnoreCase("Retry-After") ? "10" : null);
+                })
+                .sendRetryPolicy(RetryPolicy.forSends().build())
+                .build();
+
+        NotificationClientException e = assertThrows(NotificationClientException.class,
+                () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+
+        // Notify asked for a longer wait than the send policy's maximum delay, so it is not retried
+        assertEquals(10000, e.getRetryAfterMillis());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(120000, NotificationClient.parseRetryAfter("120"));
+        assertEquals(0, NotificationClient.parseRetryAfter(null));
+        assertEquals(0, NotificationClient.parseRetryAfter("soon"));
+        assertEquals(0, NotificationClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        long fromDate = NotificationClient.parseRetryAfter(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1)));
+        assertTrue(fromDate > 50000 && fromDate <= 60000);
+    }
+
+    @Test
+    public void testInterruptEndsTheRetryLoop() {
+        AtomicInteger attempts = new AtomicInteger();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .transport(request -> {
+                    attempts.incrementAndGet();
+                    return new HttpTransportResponse(503, null, null);
+                })
+                .retryPolicy(RetryPolicy.builder().maxAttempts(5).jitter(ceiling -> ceiling).build())
+                .build();
+
+        Thread.currentThread().interrupt();
+        NotificationClientException e = assertThrows(NotificationClientException.class, () -> client.getTemplateById("aTemplateId"));
+
+        assertTrue(Thread.interrupted());
+        assertTrue(e.getCause() instanceof InterruptedException);
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testGetPdfForLetterToOutputStreamIsNotRetriedOncePartOfItHasBeenWritten() {
+        AtomicInteger attempts = new AtomicInteger();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .transport(request -> {
+                    attempts.incrementAndGet();
+                    return new HttpTransportResponse(200, bodyThatFailsAfter("%PDF-"), () -> { });
+                })
+                .retryPolicy(RetryPolicy.builder().baseDelay(1, TimeUnit.MILLISECONDS).build())
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(NotificationClientException.class, () -> client.getPdfForLetter("aNotificationId", out));
+
+        assertEquals(1, attempts.get());
+        assertEquals("%PDF-", new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testGetPdfForLetterToFileIsWrittenAgainWhenRetried() throws NotificationClientException, IOException {
+        AtomicInteger attempts = new AtomicInteger();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .transport(request -> attempts.incrementAndGet() == 1
+                        ? new HttpTransportResponse(200, bodyThatFailsAfter("%PDF-"), () -> { })
+                        : new HttpTransportResponse(200, new ByteArrayInputStream("%PDF-1.4".getBytes(StandardCharsets.US_ASCII)), () -> { }))
+                .retryPolicy(RetryPolicy.builder().baseDelay(1, TimeUnit.MILLISECONDS).build())
+                .build();
+        Path destination = Files.createTempFile("letter", ".pdf");
+
+        try {
+            assertEquals(8, client.getPdfForLetter("aNotificationId", destination));
+
+            assertEquals(2, attempts.get());
+            assertEquals("%PDF-1.4", new String(Files.readAllBytes(destination), StandardCharsets.US_ASCII));
+        } finally {
+            Files.delete(destination);
+        }
+    }
+
+    @Test
+    public void testGetPdfForLetterDoesNotRetryFailuresToWriteTheDestination() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .transport(request -> {
+                    attempts.incrementAndGet();
+                    return new HttpTransportResponse(200, new ByteArrayInputStream("%PDF-1.4".getBytes(StandardCharsets.US_ASCII)), () -> { });
+                })
+                .retryPolicy(RetryPolicy.builder().baseDelay(1, TimeUnit.MILLISECONDS).build())
+                .build();
+        OutputStream full = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("No space left on device");
+            }
+        };
+        Path directory = Files.createTempDirectory("letters");
+
+        try {
+            NotificationClientException e = assertThrows(NotificationClientException.class, () -> client.getPdfForLetter("aNotificationId", full));
+            assertEquals("No space left on device", e.getCause().getMessage());
+            assertThrows(NotificationClientException.class, () -> client.getPdfForLetter("aNotificationId", directory));
+
+            assertEquals(2, attempts.get());
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private static InputStream bodyThatFailsAfter(String start) {
+        return new SequenceInputStream(new ByteArrayInputStream(start.getBytes(StandardCharsets.US_ASCII)), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        });
+    }
+
     @Test
     public void testSendPrecompiledLetter() throws IOException, NotificationClientException {
         NotifyPrecompiledLetterResponse expected = objectMapper.readValue(this.getClass().getClassLoader().getResourceAsStream("v2_notifications_precompiled_letter_response.json"), NotifyPrecompiledLetterResponse.class);
@@ -616,6 +955,87 @@ public class NotificationClientTest {
         assertEquals("postage-you-have-set-or-None", requestReceivedByNotifyApi.getPostage());
     }
 
+    @Test
+    public void testSendPrecompiledLetterFromPath() throws IOException, NotificationClientException {
+        wireMockRule.stubFor(post("/v2/notifications/letter")
+                .willReturn(created()
+                        .withResponseBody(new Body(IOUtils.toString(this.getClass().getClassLoader().getResourceAsStream("v2_notifications_precompiled_letter_response.json"), StandardCharsets.UTF_8)))));
+        NotificationClient client = new NotificationClient(COMBINED_API_KEY, BASE_URL);
+        final Path pdfFile = new File(this.getClass().getClassLoader().getResource("small.pdf.txt").getFile()).toPath();
+
+        client.sendPrecompiledLetter("your-letter-reference", pdfFile);
+
+        LoggedRequest request = validateRequest();
+        NotifyPrecompiledLetterRequest requestReceivedByNotifyApi = objectMapper.readValue(request.getBodyAsString(), NotifyPrecompiledLetterRequest.class);
+        assertEquals("your-letter-reference", requestReceivedByNotifyApi.getReference());
+        assertEquals("JVBERi1mb28=", requestReceivedByNotifyApi.getContent());
+        assertNull(requestReceivedByNotifyApi.getPostage());
+        assertEquals(String.valueOf(request.getBody().length), request.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void testSendPrecompiledLetterFromAMissingFileKeepsTheCause() throws IOException {
+        NotificationClient client = new NotificationClient(COMBINED_API_KEY, BASE_URL);
+        Path missing = Files.createTempFile("letter", ".pdf");
+        Files.delete(missing);
+
+        NotificationClientException e = assertThrows(NotificationClientException.class,
+                () -> client.sendPrecompiledLetter("your-letter-reference", missing));
+
+        assertEquals("Can't read file", e.getMessage());
+        assertEquals(400, e.getHttpResult());
+        assertEquals(NoSuchFileException.class, e.getCause().getClass());
+    }
+
+    @Test
+    public void testGetTemplateByIdRetriesServerErrors() throws IOException, NotificationClientException {
+        NotifyTemplate expected = objectMapper.readValue(this.getClass().getClassLoader().getResourceAsStream("v2_template_byid_response.json"), NotifyTemplate.class);
+        UUID templateId = expected.getId();
+        wireMockRule.stubFor(get(urlPathEqualTo("/v2/template/" + templateId))
+                .inScenario("retry").whenScenarioStateIs(STARTED)
+                .willReturn(serviceUnavailable())
+                .willSetStateTo("recovered"));
+        wireMockRule.stubFor(get(urlPathEqualTo("/v2/template/" + templateId))
+                .inScenario("retry").whenScenarioStateIs("recovered")
+                .willReturn(ok()
+                        .withResponseBody(new Body(objectMapper.writeValueAsString(expected)))));
+        List<Integer> attempts = new ArrayList<>();
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .retryPolicy(RetryPolicy.builder()
+                        .baseDelay(1, TimeUnit.MILLISECONDS)
+                        .listener(new RetryListener() {
+                            @Override
+                            public void onComplete(int attemptCount, NotificationClientException lastFailure) {
+                                attempts.add(attemptCount);
+                            }
+                        })
+                        .build())
+                .build();
+
+        Template actual = client.getTemplateById(templateId.toString());
+
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(Collections.singletonList(2), attempts);
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/v2/template/" + templateId)));
+    }
+
+    @Test
+    public void testSendsAreNotRetriedByTheReadRetryPolicy() {
+        wireMockRule.stubFor(post("/v2/notifications/sms")
+                .willReturn(serviceUnavailable()));
+        NotificationClient client = NotificationClient.builder(COMBINED_API_KEY)
+                .baseUrl(BASE_URL)
+                .retryPolicy(RetryPolicy.builder().baseDelay(1, TimeUnit.MILLISECONDS).build())
+                .build();
+
+        NotificationClientException e = assertThrows(NotificationClientException.class,
+                () -> client.sendSms("aTemplateId", "a phone number", emptyMap(), "aReference"));
+
+        assertEquals(503, e.getHttpResult());
+        wireMockRule.verify(1, postRequestedFor(urlPathEqualTo("/v2/notifications/sms")));
+    }
+
     @Test
     public void testGetTemplateById() throws IOException, NotificationClientException {
         NotifyTemplate expected = objectMapper.readValue(this.getClass().getClassLoader().getResourceAsStream("v2_template_byid_response.json"), NotifyTemplate.class);
@@ -0,0 +1,152 @@
+package uk.gov.service.notify;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+public class NotificationIteratorTest {
+
+    private static final String COMBINED_API_KEY = "Api_key_name-" + UUID.randomUUID() + "-" + UUID.randomUUID();
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private NotificationClient client;
+
+    @Before
+    public void beforeEachTest() {
+        client = new NotificationClient(COMBINED_API_KEY, "http://localhost:" + wireMockRule.port());
+    }
+
+    @Test
+    public void testFollowsOlderThanFromTheNextPageLink() throws IOException {
+        List<String> first = ids(3);
+        List<String> second = ids(2);
+        stubPage(null, first, "/v2/notifications?older_than=" + first.get(2) + "&status=delivered");
+        stubPage(first.get(2), second, null);
+
+        List<String> actual;
+        try (Stream<Notification> notifications = client.streamNotifications("delivered", null, null)) {
+            actual = notifications.map(notification -> notification.getId().toString()).collect(Collectors.toList());
+        }
+
+        List<String> expected = new ArrayList<>(first);
+        expected.addAll(second);
+        assertEquals(expected, actual);
+        wireMockRule.verify(2, getRequestedFor(urlPathEqualTo("/v2/notifications")).withQueryParam("status", equalTo("delivered")));
+    }
+
+    @Test
+    public void testFallsBackToTheOldestIdWhenTheLinkHasNoOlderThan() throws IOException {
+        List<String> first = ids(2);
+        List<String> second = ids(1);
+        stubPage(null, first, "/next");
+        stubPage(first.get(1), second, null);
+
+        NotificationIterator iterator = new NotificationIterator(client, null, null, null);
+        List<String> actual = new ArrayList<>();
+        iterator.forEachRemaining(notification -> actual.add(notification.getId().toString()));
+
+        assertEquals(3, actual.size());
+        assertEquals(second.get(0), actual.get(2));
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    public void testPagesAreOnlyFetchedWhenNeeded() throws IOException {
+        List<String> first = ids(2);
+        stubPage(null, first, "/v2/notifications?older_than=" + first.get(1));
+        stubPage(first.get(1), ids(2), null);
+
+        Iterator<Notification> iterator = client.streamNotifications(null, null, null).iterator();
+        wireMockRule.verify(0, getRequestedFor(urlPathEqualTo("/v2/notifications")));
+
+        iterator.next();
+        wireMockRule.verify(1, getRequestedFor(urlPathEqualTo("/v2/notifications")).withQueryParam("older_than", absent()));
+    }
+
+    @Test
+    public void testFailedPageIsThrownUnchecked() throws IOException {
+        List<String> first = ids(1);
+        stubPage(null, first, "/v2/notifications?older_than=" + first.get(0));
+        wireMockRule.stubFor(get(urlPathEqualTo("/v2/notifications"))
+                .withQueryParam("older_than", equalTo(first.get(0)))
+                .willReturn(serverError()));
+
+        NotificationIterator iterator = new NotificationIterator(client, null, null, null);
+        iterator.next();
+
+        UncheckedNotificationClientException e = assertThrows(UncheckedNotificationClientException.class, iterator::hasNext);
+        assertEquals(500, e.getCause().getHttpResult());
+    }
+
+    @Test
+    public void testErrorsAreRethrownAsTheyAre() {
+        NotificationClient failing = NotificationClient.builder(COMBINED_API_KEY)
+                .transport(request -> {
+                    throw new OutOfMemoryError("simulated");
+                })
+                .build();
+
+        NotificationIterator iterator = new NotificationIterator(failing, null, null, null);
+
+        OutOfMemoryError e = assertThrows(OutOfMemoryError.class, iterator::hasNext);
+        assertEquals("simulated", e.getMessage());
+    }
+
+    private void stubPage(String olderThanId, List<String> ids, String nextLink) throws IOException {
+        JSONObject template = new JSONObject(readResource("v2_notifications_byid_response.json"));
+        JSONArray notifications = new JSONArray();
+        for (String id : ids) {
+            notifications.put(new JSONObject(template.toString()).put("id", id));
+        }
+        JSONObject links = new JSONObject().put("current", "/current").put("next", nextLink == null ? JSONObject.NULL : nextLink);
+        String body = new JSONObject().put("notifications", notifications).put("links", links).toString();
+
+        wireMockRule.stubFor(get(urlPathEqualTo("/v2/notifications"))
+                .withQueryParam("older_than", olderThanId == null ? absent() : equalTo(olderThanId))
+                .willReturn(okJson(body)));
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    private String readResource(String name) throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+            return IOUtils.toString(in, UTF_8);
+        }
+    }
+}
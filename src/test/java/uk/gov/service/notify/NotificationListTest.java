@@ -2,12 +2,22 @@ package uk.gov.service.notify;
 
 import org.jose4j.json.internal.json_simple.JSONArray;
 import org.jose4j.json.internal.json_simple.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONException;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class NotificationListTest {
     @Test
@@ -136,4 +146,40 @@ public class NotificationListTest {
         assertEquals(Optional.<String>empty(), result.getNextPageLink());
 
     }
+
+    @Test
+    public void testNotificationList_canParseStreamOneNotificationAtATime() throws IOException {
+        String content;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("v2_notifications_response.json")) {
+            content = IOUtils.toString(in, UTF_8);
+        }
+        NotificationList expected = new NotificationList(content);
+
+        List<Notification> parsed = new ArrayList<>();
+        NotificationList links = NotificationList.parse(new ByteArrayInputStream(content.getBytes(UTF_8)), parsed::add);
+
+        assertTrue(links.getNotifications().isEmpty());
+        assertEquals(expected.getCurrentPageLink(), links.getCurrentPageLink());
+        assertEquals(expected.getNextPageLink(), links.getNextPageLink());
+        assertEquals(expected.getNotifications().size(), parsed.size());
+        assertEquals(expected.getNotifications().toString(), parsed.toString());
+    }
+
+    @Test
+    public void testNotificationList_streamingParseAcceptsAnyKeyOrder() {
+        String content = "{\"links\": {\"current\": \"/current\", \"next\": null}, \"extra\": [1, {\"a\": 2}], \"notifications\": []}";
+
+        NotificationList result = NotificationList.parse(new ByteArrayInputStream(content.getBytes(UTF_8)));
+
+        assertEquals(0, result.getNotifications().size());
+        assertEquals("/current", result.getCurrentPageLink());
+        assertEquals(Optional.<String>empty(), result.getNextPageLink());
+    }
+
+    @Test
+    public void testNotificationList_streamingParseRejectsMissingLinks() {
+        String content = "{\"notifications\": []}";
+
+        assertThrows(JSONException.class, () -> NotificationList.parse(new ByteArrayInputStream(content.getBytes(UTF_8))));
+    }
 }
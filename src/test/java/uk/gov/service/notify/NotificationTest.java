@@ -1,14 +1,17 @@
 package uk.gov.service.notify;
 
 import org.jose4j.json.internal.json_simple.JSONObject;
+import org.json.JSONException;
 import org.junit.Test;
 
 import java.time.ZonedDateTime;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 
 public class NotificationTest {
 
@@ -192,4 +195,58 @@ public class NotificationTest {
         assertEquals(Optional.of(ZonedDateTime.parse("2016-03-03T16:00:00.000Z")), notification.getEstimatedDelivery());
         assertEquals(Optional.of("John Doe"), notification.getCreatedByName());
     }
+
+    @Test
+    public void testLazyNotificationDecodesTheSameFields() {
+        JSONObject content = new JSONObject();
+        String id = UUID.randomUUID().toString();
+        content.put("id", id);
+        content.put("reference", null);
+        content.put("email_address", "some@address.com");
+        content.put("type", "email");
+        content.put("status", "delivered");
+        JSONObject template = new JSONObject();
+        String templateId = UUID.randomUUID().toString();
+        template.put("id", templateId);
+        template.put("version", 1);
+        template.put("uri", "https://api.notifications.service.gov.uk/templates/" + templateId);
+        content.put("template", template);
+        content.put("body", "Body of the message");
+        content.put("subject", "Subject of the message");
+        content.put("created_at", "2016-03-01T08:30:00.000Z");
+        content.put("sent_at", "2016-03-01T08:30:03.000Z");
+        content.put("completed_at", null);
+        JSONObject costDetails = new JSONObject();
+        costDetails.put("billable_sms_fragments", 2);
+        costDetails.put("sms_rate", 0.0227);
+        content.put("cost_details", costDetails);
+
+        Notification eager = new Notification(content.toString());
+        Notification lazy = new Notification(new org.json.JSONObject(content.toString()), true);
+
+        assertEquals(UUID.fromString(id), lazy.getId());
+        assertEquals("delivered", lazy.getStatus());
+        assertEquals(Optional.<String>empty(), lazy.getReference());
+        assertEquals(Optional.of(ZonedDateTime.parse("2016-03-01T08:30:03.000Z")), lazy.getSentAt());
+        assertEquals(Optional.<ZonedDateTime>empty(), lazy.getCompletedAt());
+        assertEquals(Optional.of(2), lazy.getBillableSmsFragments());
+        assertEquals(Optional.<Integer>empty(), lazy.getBillableSheetsOfPaper());
+        assertEquals(eager.toString(), lazy.toString());
+    }
+
+    @Test
+    public void testLazyNotificationOnlyFailsWhenAMalformedFieldIsRead() {
+        JSONObject content = new JSONObject();
+        String id = UUID.randomUUID().toString();
+        content.put("id", id);
+        content.put("status", "delivered");
+        content.put("created_at", "not a date");
+
+        Notification notification = new Notification(new org.json.JSONObject(content.toString()), true);
+
+        assertEquals(UUID.fromString(id), notification.getId());
+        assertEquals("delivered", notification.getStatus());
+        assertThrows(DateTimeParseException.class, notification::getCreatedAt);
+        assertThrows(JSONException.class, notification::getBody);
+    }
 }
@@ -4,7 +4,12 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.junit.Assert.*;
@@ -37,4 +42,58 @@ public class PdfUtilsTest
 
         assertTrue(PdfUtils.isBase64StringPDF(base64encodedString));
     }
+
+    @Test
+    public void testIsPdfReadsAStream() throws Exception
+    {
+        ClassLoader classLoader = getClass().getClassLoader();
+        try (InputStream pdf = new FileInputStream(classLoader.getResource("one_page_pdf.pdf").getFile());
+             InputStream notPdf = new FileInputStream(classLoader.getResource("not_a_pdf.txt").getFile()))
+        {
+            assertTrue(PdfUtils.isPDF(pdf));
+            assertFalse(PdfUtils.isPDF(notPdf));
+        }
+    }
+
+    @Test
+    public void testOnlyTheHeaderWindowIsChecked() throws Exception
+    {
+        byte[] inWindow = withMarkerAt(PdfUtils.HEADER_SCAN_WINDOW - 5);
+        byte[] pastWindow = withMarkerAt(PdfUtils.HEADER_SCAN_WINDOW - 4);
+
+        assertTrue(PdfUtils.isPDF(new ByteArrayInputStream(inWindow)));
+        assertTrue(PdfUtils.isPDF(ByteBuffer.wrap(inWindow)));
+        assertTrue(PdfUtils.isBase64StringPDF(new String(Base64.encodeBase64(inWindow), US_ASCII)));
+        assertFalse(PdfUtils.isPDF(new ByteArrayInputStream(pastWindow)));
+        assertFalse(PdfUtils.isPDF(ByteBuffer.wrap(pastWindow)));
+        assertFalse(PdfUtils.isBase64StringPDF(new String(Base64.encodeBase64(pastWindow), US_ASCII)));
+    }
+
+    @Test
+    public void testIsBase64StringPdfDecodesOnlyTheHeader()
+    {
+        String header = new String(Base64.encodeBase64(withMarkerAt(0)), US_ASCII);
+
+        assertTrue(PdfUtils.isBase64StringPDF(header + "this is not base64!"));
+    }
+
+    @Test
+    public void testIsPdfLeavesTheBufferPositionAlone()
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        buffer.put(new byte[10]).put("%PDF-1.7".getBytes(US_ASCII));
+        buffer.position(10);
+
+        assertTrue(PdfUtils.isPDF(buffer));
+        assertEquals(10, buffer.position());
+        assertFalse(PdfUtils.isPDF(ByteBuffer.allocate(0)));
+    }
+
+    private static byte[] withMarkerAt(int offset)
+    {
+        byte[] content = new byte[PdfUtils.HEADER_SCAN_WINDOW + 100];
+        Arrays.fill(content, (byte) '%');
+        System.arraycopy("%PDF-1.7".getBytes(US_ASCII), 0, content, offset, 8);
+        return content;
+    }
 }
@@ -0,0 +1,75 @@
+package uk.gov.service.notify;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class PersonalisationValidatorTest {
+
+    private static final String COMBINED_API_KEY = "Api_key_name-" + UUID.randomUUID() + "-" + UUID.randomUUID();
+    private static final String TEMPLATE_ID = "f33517ff-2a88-4f6e-b855-c550268ce08a";
+    private static final String TEMPLATE = "{" +
+            "\"id\": \"" + TEMPLATE_ID + "\", \"name\": \"a name\", \"type\": \"email\"," +
+            "\"created_at\": \"2024-05-10T16:40:14Z\", \"updated_at\": null, \"version\": 3," +
+            "\"created_by\": \"an email address\", \"body\": \"Hello ((First name)), ((paid??thank you))\"," +
+            "\"subject\": \"Reference ((reference))\", \"letter_contact_block\": null}";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private PersonalisationValidator validator;
+
+    @Before
+    public void beforeEachTest() {
+        NotificationClient client = new NotificationClient(COMBINED_API_KEY, "http://localhost:" + wireMockRule.port());
+        validator = new PersonalisationValidator(TemplateCache.builder(client).build());
+    }
+
+    @Test
+    public void testMissingPlaceholdersFailWithA400() {
+        wireMockRule.stubFor(get(urlEqualTo("/v2/template/" + TEMPLATE_ID)).willReturn(ok(TEMPLATE)));
+
+        NotificationClientException e = assertThrows(NotificationClientException.class,
+                () -> validator.validate(TEMPLATE_ID, Collections.singletonMap("first_name", "Sam")));
+
+        assertEquals(400, e.getHttpResult());
+        assertEquals("Status code: 400 Missing personalisation: reference, paid", e.getMessage());
+    }
+
+    @Test
+    public void testTemplateIsOnlyFetchedOnce() throws NotificationClientException {
+        wireMockRule.stubFor(get(urlEqualTo("/v2/template/" + TEMPLATE_ID)).willReturn(ok(TEMPLATE)));
+        Map<String, Object> personalisation = new HashMap<>();
+        personalisation.put("First name", "Sam");
+        personalisation.put("paid", "yes");
+        personalisation.put("REFERENCE", "ABC123");
+
+        for (int i = 0; i < 5; i++) {
+            validator.validate(TEMPLATE_ID, personalisation);
+        }
+
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/v2/template/" + TEMPLATE_ID)));
+    }
+
+    @Test
+    public void testSendIsNotBlockedWhenTheTemplateCannotBeFetched() throws NotificationClientException {
+        wireMockRule.stubFor(get(urlEqualTo("/v2/template/" + TEMPLATE_ID)).willReturn(serverError()));
+
+        validator.validate(TEMPLATE_ID, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,67 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class PrecompiledLetterBodyTest {
+
+    @Test
+    public void testPdfIsBase64EncodedIntoTheBody() throws IOException {
+        for (int size : new int[]{1, 2, 3, 4, 3 * 8 * 1024, 3 * 8 * 1024 + 1, 100_000}) {
+            byte[] pdf = new byte[size];
+            new Random(size).nextBytes(pdf);
+            Path file = writeFile(pdf);
+
+            PrecompiledLetterBody body = new PrecompiledLetterBody("a reference", file, size, "first");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            body.writeTo(out);
+
+            String expected = "{\"reference\":\"a reference\",\"postage\":\"first\",\"content\":\""
+                    + Base64.getEncoder().encodeToString(pdf) + "\"}";
+            assertEquals(expected, new String(out.toByteArray(), UTF_8));
+            assertEquals(out.size(), body.contentLength());
+        }
+    }
+
+    @Test
+    public void testBodyCanBeWrittenAgainForARetry() throws IOException {
+        Path file = writeFile("%PDF-foo".getBytes(UTF_8));
+        PrecompiledLetterBody body = new PrecompiledLetterBody("a reference", file, 8, null);
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        body.writeTo(first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        body.writeTo(second);
+
+        assertEquals("{\"reference\":\"a reference\",\"content\":\"JVBERi1mb28=\"}", new String(second.toByteArray(), UTF_8));
+        assertEquals(first.toString("UTF-8"), second.toString("UTF-8"));
+    }
+
+    @Test
+    public void testFileThatChangesSizeFailsTheRequest() throws IOException {
+        Path file = writeFile("%PDF-foo".getBytes(UTF_8));
+        PrecompiledLetterBody shrunk = new PrecompiledLetterBody("a reference", file, 9, null);
+        PrecompiledLetterBody grown = new PrecompiledLetterBody("a reference", file, 7, null);
+        OutputStream discard = new ByteArrayOutputStream();
+
+        assertThrows(IOException.class, () -> shrunk.writeTo(discard));
+        assertThrows(IOException.class, () -> grown.writeTo(discard));
+    }
+
+    private static Path writeFile(byte[] content) throws IOException {
+        Path file = Files.createTempFile("precompiled-letter", ".pdf");
+        file.toFile().deleteOnExit();
+        return Files.write(file, content);
+    }
+}
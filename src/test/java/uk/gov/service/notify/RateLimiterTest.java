@@ -0,0 +1,132 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstOfOneSecondIsLetThroughWithoutWaiting() throws NotificationClientException {
+        FakeNanoClock clock = new FakeNanoClock();
+        RateLimiter limiter = new RateLimiter(600, RateLimiter.Mode.FAIL_FAST, clock);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.acquire());
+        }
+
+        NotificationClientException e = assertThrows(NotificationClientException.class, limiter::acquire);
+        assertEquals(429, e.getHttpResult());
+        assertFalse(RetryPolicy.builder().build().retryDelayMillis(1, e) >= 0);
+        assertEquals(10, limiter.getAcquiredCount());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testPermitsRefillAtTheConfiguredRate() throws NotificationClientException {
+        FakeNanoClock clock = new FakeNanoClock();
+        RateLimiter limiter = new RateLimiter(600, RateLimiter.Mode.FAIL_FAST, clock);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(99));
+        assertThrows(NotificationClientException.class, limiter::acquire);
+
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(0, limiter.acquire());
+        assertThrows(NotificationClientException.class, limiter::acquire);
+    }
+
+    @Test
+    public void testBlockingModeWaitsForAPermit() throws NotificationClientException {
+        RateLimiter limiter = new RateLimiter(6000, RateLimiter.Mode.BLOCKING);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue("waited " + elapsed, elapsed >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertTrue(limiter.getDelayedCount() > 0);
+        assertTrue(limiter.getTotalWaitNanos() > 0);
+        assertTrue(limiter.getMaxWaitNanos() <= limiter.getTotalWaitNanos());
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testInterruptedWaitGivesItsPermitBack() throws Exception {
+        FakeNanoClock clock = new FakeNanoClock();
+        RateLimiter limiter = new RateLimiter(600, RateLimiter.Mode.BLOCKING, clock);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        waiter.start();
+        while (limiter.getDelayedCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        waiter.interrupt();
+        waiter.join();
+
+        assertTrue(failure.get() instanceof NotificationClientException);
+        assertEquals(10, limiter.getAcquiredCount());
+        // the permit the waiter reserved is free again, so the next one is due now rather than 100ms later
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, limiter.acquire());
+    }
+
+    @Test
+    public void testLimitersAreSharedPerService() {
+        RateLimiter limiter = RateLimiter.forService("service-a", 3000, RateLimiter.Mode.BLOCKING);
+
+        assertSame(limiter, RateLimiter.forService("service-a", 3000, RateLimiter.Mode.BLOCKING));
+        assertNotSame(limiter, RateLimiter.forService("service-b", 3000, RateLimiter.Mode.BLOCKING));
+    }
+
+    @Test
+    public void testConflictingLimitsForAServiceAreRejected() {
+        RateLimiter.forService("service-c", 3000, RateLimiter.Mode.BLOCKING);
+
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.forService("service-c", 6000, RateLimiter.Mode.BLOCKING));
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.forService("service-c", 3000, RateLimiter.Mode.FAIL_FAST));
+    }
+
+    @Test
+    public void testRequestsPerMinuteMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, RateLimiter.Mode.BLOCKING));
+    }
+
+    private static class FakeNanoClock implements RateLimiter.NanoClock {
+        private long now = 1_000_000_000L;
+
+        void advance(long nanos) {
+            now += nanos;
+        }
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+}
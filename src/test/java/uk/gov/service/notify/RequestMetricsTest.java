@@ -0,0 +1,39 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestMetricsTest {
+
+    @Test
+    public void testEndpointReplacesIdsWithPlaceholders() {
+        String base = "https://api.notifications.service.gov.uk";
+
+        assertEquals("/v2/notifications/email", RequestMetrics.endpointOf(base + "/v2/notifications/email"));
+        assertEquals("/v2/notifications/sms", RequestMetrics.endpointOf(base + "/v2/notifications/sms"));
+        assertEquals("/v2/notifications/letter", RequestMetrics.endpointOf(base + "/v2/notifications/letter"));
+        assertEquals("/v2/notifications", RequestMetrics.endpointOf(base + "/v2/notifications?status=delivered&older_than=abc"));
+        assertEquals("/v2/notifications/{id}", RequestMetrics.endpointOf(base + "/v2/notifications/3ad9a7f5-4b7b-4a4c-9a8f-0c4e7c2b4f11"));
+        assertEquals("/v2/notifications/{id}/pdf", RequestMetrics.endpointOf(base + "/v2/notifications/3ad9a7f5-4b7b-4a4c-9a8f-0c4e7c2b4f11/pdf"));
+        assertEquals("/v2/template/{id}", RequestMetrics.endpointOf(base + "/v2/template/aTemplateId"));
+        assertEquals("/v2/template/{id}/version/{version}", RequestMetrics.endpointOf(base + "/v2/template/aTemplateId/version/3"));
+        assertEquals("/v2/template/{id}/preview", RequestMetrics.endpointOf(base + "/v2/template/aTemplateId/preview"));
+        assertEquals("/v2/templates", RequestMetrics.endpointOf(base + "/v2/templates?type=sms"));
+        assertEquals("/v2/received-text-messages", RequestMetrics.endpointOf(base + "/v2/received-text-messages"));
+        assertEquals("/", RequestMetrics.endpointOf("http://localhost:8080"));
+    }
+
+    @Test
+    public void testSuccessMeansA2xxStatus() {
+        assertTrue(metrics(201).isSuccess());
+        assertFalse(metrics(429).isSuccess());
+        assertFalse(metrics(0).isSuccess());
+    }
+
+    private static RequestMetrics metrics(int status) {
+        return new RequestMetrics("POST", "/v2/notifications/sms", status, 10, 20, 0, 100, -1, 200, 1000);
+    }
+}
@@ -0,0 +1,116 @@
+package uk.gov.service.notify;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static final NotificationClientException SERVER_ERROR = new NotificationClientException(503, "");
+    private static final NotificationClientException BAD_REQUEST = new NotificationClientException(400, "");
+
+    @Test
+    public void testDelayDoublesUpToTheMaximum() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttempts(10)
+                .baseDelay(100, TimeUnit.MILLISECONDS)
+                .maxDelay(1, TimeUnit.SECONDS)
+                .retryBudget(0, 100)
+                .jitter(ceiling -> ceiling)
+                .build();
+
+        assertEquals(100, policy.retryDelayMillis(1, SERVER_ERROR));
+        assertEquals(200, policy.retryDelayMillis(2, SERVER_ERROR));
+        assertEquals(400, policy.retryDelayMillis(3, SERVER_ERROR));
+        assertEquals(800, policy.retryDelayMillis(4, SERVER_ERROR));
+        assertEquals(1000, policy.retryDelayMillis(5, SERVER_ERROR));
+        assertEquals(1000, policy.retryDelayMillis(9, SERVER_ERROR));
+    }
+
+    @Test
+    public void testJitterStaysWithinTheBackoffCeiling() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttempts(5)
+                .baseDelay(50, TimeUnit.MILLISECONDS)
+                .retryBudget(0, 1000)
+                .build();
+
+        for (int i = 0; i < 200; i++) {
+            long delay = policy.retryDelayMillis(3, SERVER_ERROR);
+            assertTrue(delay >= 0 && delay <= 200);
+        }
+    }
+
+    @Test
+    public void testStopsAfterMaxAttempts() {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).build();
+
+        assertTrue(policy.retryDelayMillis(2, SERVER_ERROR) >= 0);
+        assertEquals(-1, policy.retryDelayMillis(3, SERVER_ERROR));
+        assertEquals(-1, RetryPolicy.none().retryDelayMillis(1, SERVER_ERROR));
+    }
+
+    @Test
+    public void testOnlyRetriesConfiguredFailures() {
+        RetryPolicy policy = RetryPolicy.builder().retryOn(429).retryOnConnectionErrors(false).build();
+        NotificationClientException connectionError = new NotificationClientException(new IOException("reset"));
+
+        assertEquals(-1, policy.retryDelayMillis(1, BAD_REQUEST));
+        assertEquals(-1, policy.retryDelayMillis(1, SERVER_ERROR));
+        assertEquals(-1, policy.retryDelayMillis(1, connectionError));
+        assertTrue(policy.retryDelayMillis(1, new NotificationClientException(429, "")) >= 0);
+        assertTrue(RetryPolicy.builder().build().retryDelayMillis(1, connectionError) >= 0);
+    }
+
+    @Test
+    public void testBudgetLimitsRetriesToAShareOfRequests() {
+        RetryPolicy policy = RetryPolicy.builder().retryBudget(0.5, 2).build();
+
+        assertTrue(policy.retryDelayMillis(1, SERVER_ERROR) >= 0);
+        assertTrue(policy.retryDelayMillis(1, SERVER_ERROR) >= 0);
+        assertEquals(-1, policy.retryDelayMillis(1, SERVER_ERROR));
+
+        policy.recordRequest();
+        assertEquals(-1, policy.retryDelayMillis(1, SERVER_ERROR));
+        policy.recordRequest();
+        assertTrue(policy.retryDelayMillis(1, SERVER_ERROR) >= 0);
+
+        for (int i = 0; i < 100; i++) {
+            policy.recordRequest();
+        }
+        assertEquals(2, policy.getAvailableBudget());
+    }
+
+    @Test
+    public void testSendPolicyOnlyRetriesFailuresNotifyCannotHaveActedOn() {
+        RetryPolicy policy = RetryPolicy.forSends().build();
+
+        assertTrue(policy.retryDelayMillis(1, new NotificationClientException(429, "")) >= 0);
+        assertTrue(policy.retryDelayMillis(1, new NotificationClientException(new ConnectException("refused"))) >= 0);
+        assertEquals(-1, policy.retryDelayMillis(1, SERVER_ERROR));
+        assertEquals(-1, policy.retryDelayMillis(1, new NotificationClientException(new IOException("reset"))));
+    }
+
+    @Test
+    public void testRetryAfterIsWaitedFor() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxDelay(5, TimeUnit.SECONDS)
+                .jitter(ceiling -> 0)
+                .build();
+
+        assertEquals(2000, policy.retryDelayMillis(1, new NotificationClientException(429, "").retryAfter(2000)));
+        assertEquals(-1, policy.retryDelayMillis(1, new NotificationClientException(429, "").retryAfter(6000)));
+    }
+
+    @Test
+    public void testFailuresMarkedNotToBeRetriedAreNot() {
+        RetryPolicy policy = RetryPolicy.builder().build();
+
+        assertEquals(-1, policy.retryDelayMillis(1, new NotificationClientException(new IOException("disk full")).doNotRetry()));
+    }
+}
@@ -0,0 +1,250 @@
+package uk.gov.service.notify;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class TemplateCacheTest {
+
+    private static final String COMBINED_API_KEY = "Api_key_name-" + UUID.randomUUID() + "-" + UUID.randomUUID();
+    private static final String TEMPLATE_ID = "f33517ff-2a88-4f6e-b855-c550268ce08a";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private NotificationClient client;
+    private MutableClock clock;
+
+    @Before
+    public void beforeEachTest() throws IOException {
+        client = new NotificationClient(COMBINED_API_KEY, "http://localhost:" + wireMockRule.port());
+        clock = new MutableClock();
+        wireMockRule.stubFor(get(urlPathMatching("/v2/template/[^/]+(/version/[0-9]+)?"))
+                .willReturn(ok(readResource("v2_template_byid_response.json"))));
+    }
+
+    @Test
+    public void testTemplateVersionsAreCachedUntilEvicted() throws NotificationClientException {
+        TemplateCache cache = TemplateCache.builder(client).build(clock);
+
+        Template first = cache.getTemplateVersion(TEMPLATE_ID, 100);
+        clock.advanceMillis(TimeUnit.DAYS.toMillis(1));
+        Template second = cache.getTemplateVersion(TEMPLATE_ID, 100);
+
+        assertSame(first, second);
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/v2/template/" + TEMPLATE_ID + "/version/100")));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testLatestVersionIsAlsoCachedByItsVersionNumber() throws NotificationClientException {
+        TemplateCache cache = TemplateCache.builder(client).build(clock);
+
+        Template latest = cache.getTemplateById(TEMPLATE_ID);
+
+        assertSame(latest, cache.getTemplateVersion(TEMPLATE_ID, 100));
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    public void testStaleLatestVersionIsReturnedWhileItRefreshesInTheBackground() throws NotificationClientException {
+        TemplateCache cache = TemplateCache.builder(client)
+                .refreshAfter(1, TimeUnit.MINUTES)
+                .refreshExecutor(Runnable::run)
+                .build(clock);
+        Template first = cache.getTemplateById(TEMPLATE_ID);
+
+        clock.advanceMillis(TimeUnit.SECONDS.toMillis(61));
+
+        assertSame(first, cache.getTemplateById(TEMPLATE_ID));
+        assertEquals(1, cache.getRefreshCount());
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo("/v2/template/" + TEMPLATE_ID)));
+        assertNotSame(first, cache.getTemplateById(TEMPLATE_ID));
+    }
+
+    @Test
+    public void testExpiredLatestVersionWaitsForAFreshCopy() throws NotificationClientException {
+        TemplateCache cache = TemplateCache.builder(client)
+                .expireAfter(10, TimeUnit.MINUTES)
+                .build(clock);
+        cache.getTemplateById(TEMPLATE_ID);
+
+        clock.advanceMillis(TimeUnit.MINUTES.toMillis(11));
+        cache.getTemplateById(TEMPLATE_ID);
+
+        assertEquals(2, cache.getMissCount());
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo("/v2/template/" + TEMPLATE_ID)));
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneRequest() throws Exception {
+        wireMockRule.stubFor(get(urlEqualTo("/v2/template/" + TEMPLATE_ID))
+                .willReturn(aResponse().withStatus(200).withFixedDelay(200)
+                        .withBody(readResource("v2_template_byid_response.json"))));
+        TemplateCache cache = TemplateCache.builder(client).build(clock);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Template>> lookups = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                lookups.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return cache.getTemplateById(TEMPLATE_ID);
+                    } catch (NotificationClientException e) {
+                        throw new RuntimeException(e);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<Template> lookup : lookups) {
+                assertEquals(100, lookup.get().getVersion());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/v2/template/" + TEMPLATE_ID)));
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTemplateIsEvicted() throws NotificationClientException {
+        TemplateCache cache = TemplateCache.builder(client).maximumSize(2).build(clock);
+
+        cache.getTemplateVersion(TEMPLATE_ID, 1);
+        cache.getTemplateVersion(TEMPLATE_ID, 2);
+        cache.getTemplateVersion(TEMPLATE_ID, 1);
+        cache.getTemplateVersion(TEMPLATE_ID, 3);
+        cache.getTemplateVersion(TEMPLATE_ID, 1);
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getLoadCount());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        wireMockRule.stubFor(get(urlEqualTo("/v2/template/missing"))
+                .willReturn(notFound()));
+        TemplateCache cache = TemplateCache.builder(client).build(clock);
+
+        NotificationClientException e = assertThrows(NotificationClientException.class, () -> cache.getTemplateById("missing"));
+        assertEquals(404, e.getHttpResult());
+        assertThrows(NotificationClientException.class, () -> cache.getTemplateById("missing"));
+
+        wireMockRule.verify(2, getRequestedFor(urlEqualTo("/v2/template/missing")));
+        assertEquals(2, cache.getLoadFailureCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testAnErrorFromALoadIsThrownToEveryLookupWaitingOnIt() throws Exception {
+        NotificationClient failing = NotificationClient.builder(COMBINED_API_KEY)
+                .transport(request -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new AssertionError("simulated");
+                })
+                .build();
+        TemplateCache cache = TemplateCache.builder(failing).build(clock);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<Template>> lookups = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                lookups.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return cache.getTemplateById(TEMPLATE_ID);
+                    } catch (NotificationClientException e) {
+                        throw new RuntimeException(e);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<Template> lookup : lookups) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> lookup.get(5, TimeUnit.SECONDS));
+                assertEquals(AssertionError.class, e.getCause().getClass());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testARejectedRefreshIsLoadedByTheLookupThatStartedIt() throws NotificationClientException {
+        TemplateCache cache = TemplateCache.builder(client)
+                .refreshAfter(1, TimeUnit.MINUTES)
+                .refreshExecutor(command -> {
+                    throw new RejectedExecutionException("full");
+                })
+                .build(clock);
+        Template first = cache.getTemplateById(TEMPLATE_ID);
+
+        clock.advanceMillis(TimeUnit.SECONDS.toMillis(61));
+
+        assertSame(first, cache.getTemplateById(TEMPLATE_ID));
+        assertEquals(2, cache.getLoadCount());
+        assertNotSame(first, cache.getTemplateById(TEMPLATE_ID));
+    }
+
+    private String readResource(String name) throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+            return IOUtils.toString(in, UTF_8);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T10:00:00Z");
+
+        void advanceMillis(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package uk.gov.service.notify;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class TemplateRendererTest {
+
+    @Test
+    public void testSmsPlaceholdersMatchTheSyntheticPreview() throws Exception {
+        assertRendersLikePreview("sms_placeholders.json");
+    }
+
+    @Test
+    public void testSmsListMatchesTheSyntheticPreview() throws Exception {
+        assertRendersLikePreview("sms_list.json");
+    }
+
+    @Test
+    public void testEmailConditionalsAndListMatchTheSyntheticPreview() throws Exception {
+        assertRendersLikePreview("email_conditionals_and_list.json");
+    }
+
+    @Test
+    public void testLetterConditionalMatchesTheSyntheticPreview() throws Exception {
+        assertRendersLikePreview("letter_conditional.json");
+    }
+
+    @Test
+    public void testPlaceholderNamesAreListedOnceInOrder() throws Exception {
+        TemplateRenderer renderer = TemplateRenderer.compile(template("email_conditionals_and_list.json"));
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("reference", "name", "paid", "unpaid", "documents")),
+                renderer.getPlaceholderNames());
+    }
+
+    @Test
+    public void testMissingPersonalisationFailsLikeNotify() throws Exception {
+        TemplateRenderer renderer = TemplateRenderer.compile(template("sms_placeholders.json"));
+        Map<String, Object> personalisation = new HashMap<>();
+        personalisation.put("FIRST NAME", "Amala");
+
+        assertEquals(Arrays.asList("appointment_date", "Time"), renderer.getMissingPersonalisation(personalisation));
+        NotificationClientException e = assertThrows(NotificationClientException.class, () -> renderer.render(personalisation));
+        assertEquals(400, e.getHttpResult());
+        assertEquals("Status code: 400 Missing personalisation: appointment_date, Time", e.getMessage());
+    }
+
+    @Test
+    public void testNullValuesAreMissing() throws Exception {
+        TemplateRenderer renderer = TemplateRenderer.compile(template("sms_placeholders.json"));
+        Map<String, Object> personalisation = new HashMap<>();
+        personalisation.put("first name", "Amala");
+        personalisation.put("appointment_date", null);
+        personalisation.put("appointment date", "1 June");
+        personalisation.put("time", null);
+
+        assertEquals(Collections.singletonList("Time"), renderer.getMissingPersonalisation(personalisation));
+
+        personalisation.put("time", "2pm");
+        assertEquals("Hello Amala, your appointment is on 1 June at 2pm.", renderer.render(personalisation).getBody());
+    }
+
+    @Test
+    public void testEmptyListRendersAsNothing() throws Exception {
+        TemplateRenderer renderer = TemplateRenderer.compile(template("sms_list.json"));
+
+        TemplatePreview preview = renderer.render(Collections.singletonMap("documents", Collections.emptyList()));
+
+        assertEquals("Bring  to your appointment.", preview.getBody());
+    }
+
+    private void assertRendersLikePreview(String fixture) throws IOException, NotificationClientException {
+        JSONObject json = readFixture(fixture);
+        TemplatePreview expected = new TemplatePreview(json.getJSONObject("preview"));
+
+        TemplatePreview actual = TemplateRenderer.compile(new Template(json.getJSONObject("template")))
+                .render(JsonUtils.jsonToMap(json.getJSONObject("personalisation")));
+
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTemplateType(), actual.getTemplateType());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getBody(), actual.getBody());
+        assertEquals(expected.getSubject(), actual.getSubject());
+        assertEquals(Optional.empty(), actual.getHtml());
+    }
+
+    private Template template(String fixture) throws IOException {
+        return new Template(readFixture(fixture).getJSONObject("template"));
+    }
+
+    /**
+     * The fixtures are synthetic: each preview was written by hand from Notify's rendering rules, not recorded from
+     * a <code>generateTemplatePreview</code> response.
+     */
+    private JSONObject readFixture(String name) throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("synthetic_template_previews/" + name)) {
+            return new JSONObject(IOUtils.toString(in, UTF_8));
+        }
+    }
+}